@@ -0,0 +1,128 @@
+package ca.eddieantonio.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts the objects a script makes, by kind, and by the line that made
+ * them (jlox --allocations), to find the lines that keep the GC busy.
+ *
+ * An object is counted against the line of the statement being run. Since
+ * that's the caller's line until the callee runs its first statement, a
+ * function's environment counts against the line that called it.
+ */
+class Allocations {
+    private static final int MAXIMUM_LINES = 20;
+
+    enum Kind {
+        ENVIRONMENT("environments"),
+        ARGUMENTS("arguments"),
+        NUMBER("numbers"),
+        BOUND_METHOD("bound"),
+        INSTANCE("instances"),
+        STRING("strings");
+
+        final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    // Guarded by this.
+    private final List<Counts> counts = new ArrayList<>();
+
+    /**
+     * What one interpreter (i.e., one task) allocated, by kind, then by line.
+     */
+    final class Counts {
+        private final long[][] lines = new long[KINDS.length][];
+        // The line being run.
+        int line = 0;
+
+        private Counts() {
+            for (int kind = 0; kind < KINDS.length; kind++) {
+                lines[kind] = new long[64];
+            }
+            synchronized (Allocations.this) {
+                counts.add(this);
+            }
+        }
+
+        /**
+         * @return counts for another task, which starts on the same line.
+         */
+        Counts fork() {
+            Counts forked = new Counts();
+            forked.line = line;
+            return forked;
+        }
+
+        void count(Kind kind) {
+            count(kind, line);
+        }
+
+        void count(Kind kind, int line) {
+            long[] byLine = lines[kind.ordinal()];
+            if (line >= byLine.length) {
+                byLine = Arrays.copyOf(byLine, Math.max(line + 1, byLine.length * 2));
+                lines[kind.ordinal()] = byLine;
+            }
+            byLine[line]++;
+        }
+    }
+
+    Counts newCounts() {
+        return new Counts();
+    }
+
+    /**
+     * Prints how many of each kind were made, then the lines that made the most.
+     */
+    synchronized void print(PrintStream out) {
+        // Add up every task's counts: [kind][line].
+        long[][] total = new long[KINDS.length][0];
+        for (Counts each : counts) {
+            for (int kind = 0; kind < KINDS.length; kind++) {
+                long[] byLine = each.lines[kind];
+                if (byLine.length > total[kind].length) total[kind] = Arrays.copyOf(total[kind], byLine.length);
+                for (int line = 0; line < byLine.length; line++) {
+                    total[kind][line] += byLine[line];
+                }
+            }
+        }
+
+        int lineCount = 0;
+        for (long[] byLine : total) lineCount = Math.max(lineCount, byLine.length);
+        long[] lineTotals = new long[lineCount];
+        List<Integer> lines = new ArrayList<>();
+        for (int line = 0; line < lineCount; line++) {
+            for (long[] byLine : total) {
+                if (line < byLine.length) lineTotals[line] += byLine[line];
+            }
+            if (lineTotals[line] > 0) lines.add(line);
+        }
+        lines.sort((a, b) -> Long.compare(lineTotals[b], lineTotals[a]));
+
+        out.println("allocations:");
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            out.printf("  %-12s %12d%n", KINDS[kind].label, Arrays.stream(total[kind]).sum());
+        }
+
+        StringBuilder header = new StringBuilder(String.format("  %6s %12s", "line", "total"));
+        for (Kind kind : KINDS) header.append(String.format(" %12s", kind.label));
+        out.println(header);
+        for (int line : lines.subList(0, Math.min(MAXIMUM_LINES, lines.size()))) {
+            // Line 0 is whatever happens outside of any statement, e.g., calls from Java.
+            StringBuilder row = new StringBuilder(String.format("  %6s %12d", line > 0 ? line : "-", lineTotals[line]));
+            for (long[] byLine : total) {
+                row.append(String.format(" %12d", line < byLine.length ? byLine[line] : 0));
+            }
+            out.println(row);
+        }
+    }
+}
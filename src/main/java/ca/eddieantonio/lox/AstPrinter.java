@@ -1,16 +1,211 @@
 package ca.eddieantonio.lox;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Prints an S-expression of the AST.
+ *
+ * Given the Coverage of a run (jlox --coverage), it also says how many
+ * times each statement ran and how long it took altogether, and how many
+ * times each expression ran, e.g., {12}. Functions and methods say how
+ * many times they were called, and how long the calls took. Statements are
+ * printed as they ran, so a for-loop shows up as the block and while-loop
+ * it became, or as a counted (for ...) loop. It can print the source instead, with how many
+ * times each line ran, like gcov.
  */
-public class AstPrinter implements Expr.Visitor<String> {
+public class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<Void> {
+    private static final String NEVER_RAN = "#####";
+
+    private final Coverage coverage;
+    private final StringBuilder lines = new StringBuilder();
+    private int depth = 0;
+    // Off for parts of the tree that never run as nodes of their own.
+    private boolean annotate = true;
+    // The most any statement starting on each line ran: {hits, nanos}.
+    private final Map<Integer, long[]> sourceLines = new HashMap<>();
+
+    AstPrinter() {
+        this(null);
+    }
+
+    AstPrinter(Coverage coverage) {
+        this.coverage = coverage;
+    }
+
     String print(Expr expr) {
-        return expr.accept(this);
+        return expression(expr);
+    }
+
+    /**
+     * @return each statement on its own line, indented by how deeply it's nested.
+     */
+    String print(List<Stmt> statements) {
+        lines.setLength(0);
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+        return lines.toString();
+    }
+
+    /**
+     * @return the source, with how many times each line ran, and how long
+     * it took: "-" for a line with no statements, and ##### for a line
+     * whose statements never ran.
+     */
+    String printLines(String source, List<Stmt> statements) {
+        print(statements);
+
+        StringBuilder builder = new StringBuilder();
+        String[] text = source.split("\r?\n");
+        for (int i = 0; i < text.length; i++) {
+            long[] line = sourceLines.get(i + 1);
+            String hits = line == null ? "-" : line[0] == 0 ? NEVER_RAN : Long.toString(line[0]);
+            String millis = line == null || line[0] == 0 ? "" : String.format("%.3f", line[1] / 1_000_000.0);
+            builder.append(String.format("%10s %10s %5d: %s%n", hits, millis, i + 1, text[i]));
+        }
+        return builder.toString();
+    }
+
+    // Statements:
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        nest(stmt, "(block", stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        String head = "(class " + stmt.name.lexeme;
+        if (stmt.superclass != null) head += " < " + stmt.superclass.name.lexeme;
+        nest(stmt, head, stmt.methods);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        line(stmt, expression(stmt.expression));
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // The counter isn't run as a statement of its own, and the loop compares and counts it without
+        // running its condition or increment; only the bound, unless it's invariant.
+        String counter = "(var " + stmt.counter.name.lexeme + " " + expression(stmt.counter.initializer) + ")";
+        String condition = "(" + stmt.condition.operator.lexeme + " " + stmt.counter.name.lexeme + " "
+                + expression(stmt.condition.right) + ")";
+        annotate = false;
+        String increment = expression(stmt.increment);
+        annotate = true;
+        String head = "(for " + counter + " " + condition + " " + increment;
+        if (stmt.invariant) head += " invariant";
+        nest(stmt, head, List.of(stmt.body));
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        StringBuilder head = new StringBuilder("(fun ").append(stmt.name.lexeme).append(" (");
+        for (int i = 0; i < stmt.params.size(); i++) {
+            if (i > 0) head.append(' ');
+            head.append(stmt.params.get(i).lexeme);
+        }
+        head.append(')');
+        // Declaring it isn't interesting, and methods aren't even run as statements; calling it is.
+        nest(stmt, head.toString(), stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        String head = "(if " + expression(stmt.condition);
+        nest(stmt, head, stmt.elseBranch == null
+                ? List.of(stmt.thenBranch)
+                : List.of(stmt.thenBranch, stmt.elseBranch));
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        line(stmt, "(print " + expression(stmt.expression) + ")");
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line(stmt, stmt.value == null ? "(return)" : "(return " + expression(stmt.value) + ")");
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        String head = (stmt.constant ? "(const " : "(var ") + stmt.name.lexeme;
+        line(stmt, stmt.initializer == null ? head + ")" : head + " " + expression(stmt.initializer) + ")");
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        nest(stmt, "(while " + expression(stmt.condition), List.of(stmt.body));
+        return null;
+    }
+
+    /**
+     * Prints the statement's head, then what's inside it, one level deeper.
+     */
+    private void nest(Stmt stmt, String head, List<? extends Stmt> inside) {
+        if (inside.isEmpty()) {
+            line(stmt, head + ")");
+            return;
+        }
+
+        line(stmt, head);
+        depth++;
+        for (Stmt statement : inside) {
+            statement.accept(this);
+        }
+        depth--;
+        // Close it at the end of its last line, Lisp-style.
+        lines.setLength(lines.length() - System.lineSeparator().length());
+        lines.append(')').append(System.lineSeparator());
+    }
+
+    private void line(Stmt stmt, String text) {
+        if (coverage != null) {
+            long hits = stmt instanceof Stmt.Function function ? coverage.calls(function) : coverage.hits(stmt);
+            long nanos = stmt instanceof Stmt.Function function ? coverage.callNanos(function) : coverage.nanos(stmt);
+            if (hits == 0) {
+                lines.append(String.format("%10s %10s  ", NEVER_RAN, ""));
+            } else {
+                lines.append(String.format("%10d %10.3f  ", hits, nanos / 1_000_000.0));
+            }
+
+            long[] line = sourceLines.computeIfAbsent(stmt.line, key -> new long[2]);
+            line[0] = Math.max(line[0], hits);
+            line[1] = Math.max(line[1], nanos);
+        }
+        lines.append("  ".repeat(depth)).append(text).append(System.lineSeparator());
+    }
+
+    // Expressions:
+
+    /**
+     * @return the expression, with how many times it ran, unless it's too
+     * simple for that to be interesting.
+     */
+    private String expression(Expr expr) {
+        String printed = expr.accept(this);
+        if (coverage == null || !annotate) return printed;
+        if (expr instanceof Expr.Literal || expr instanceof Expr.Variable || expr instanceof Expr.This) return printed;
+        return printed + "{" + coverage.hits(expr) + "}";
     }
 
     @Override
     public String visitAssignExpr(Expr.Assign expr) {
-        return "(set " + expr.name.lexeme + " " + expr.value.accept(this) + ")";
+        return "(set " + expr.name.lexeme + " " + expression(expr.value) + ")";
     }
 
     @Override
@@ -23,12 +218,12 @@ public class AstPrinter implements Expr.Visitor<String> {
         Expr[] args = new Expr[expr.arguments.size()];
         expr.arguments.toArray(args);
 
-        return parenthesize(expr.callee.accept(this), args);
+        return parenthesize(expression(expr.callee), args);
     }
 
     @Override
     public String visitGetExpr(Expr.Get expr) {
-        return parenthesize("get!", expr.object);
+        return "(get! " + expression(expr.object) + " " + expr.name.lexeme + ")";
     }
 
     @Override
@@ -39,6 +234,7 @@ public class AstPrinter implements Expr.Visitor<String> {
     @Override
     public String visitLiteralExpr(Expr.Literal expr) {
         if (expr.value == null) return "nil";
+        if (expr.value instanceof String) return "\"" + expr.value + "\"";
         return expr.value.toString();
     }
 
@@ -49,7 +245,7 @@ public class AstPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitSetExpr(Expr.Set expr) {
-        return parenthesize("set!", expr.object, expr.value);
+        return "(set! " + expression(expr.object) + " " + expr.name.lexeme + " " + expression(expr.value) + ")";
     }
 
     @Override
@@ -78,7 +274,7 @@ public class AstPrinter implements Expr.Visitor<String> {
         builder.append("(").append(name);
         for (Expr expr : exprs) {
             builder.append(" ");
-            builder.append(expr.accept(this));
+            builder.append(expression(expr));
         }
         builder.append(")");
 
@@ -0,0 +1,122 @@
+package ca.eddieantonio.lox;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs many scripts in one JVM, so that they share its startup and its JIT.
+ *
+ * Every script gets its own LoxRuntime with its own captured output, and runs
+ * on a pool of worker threads. Each script's output is printed in the order the
+ * scripts were given, followed by a tab-separated status line on stderr:
+ *
+ *     exit-status    milliseconds    path
+ */
+class Batch {
+    private final int jobs;
+
+    private record Result(Path script, int status, long nanos, byte[] out, byte[] err) {}
+
+    Batch(int jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * @param source a directory of .lox files, or "-" to read paths from stdin, one per line.
+     */
+    static List<Path> scripts(String source) throws IOException {
+        if (source.equals("-")) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            return reader.lines()
+                    .filter(line -> !line.isBlank())
+                    .map(Paths::get)
+                    .collect(Collectors.toList());
+        }
+
+        try (Stream<Path> files = Files.walk(Paths.get(source))) {
+            return files
+                    .filter(path -> path.toString().endsWith(".lox") && Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return the worst exit status of all the scripts.
+     */
+    int run(List<Path> scripts) {
+        long started = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        List<Future<Result>> results = new ArrayList<>();
+        for (Path script : scripts) {
+            results.add(pool.submit(() -> run(script)));
+        }
+
+        int worst = 0;
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            Result result = await(scripts.get(i), results.get(i));
+            System.out.write(result.out, 0, result.out.length);
+            System.out.flush();
+            System.err.write(result.err, 0, result.err.length);
+            System.err.printf("%d\t%.1f\t%s%n", result.status, result.nanos / 1e6, result.script);
+
+            if (result.status != 0) failed++;
+            worst = Math.max(worst, result.status);
+        }
+        pool.shutdown();
+
+        System.err.printf("%d scripts, %d failed, %.1f s%n",
+                scripts.size(), failed, (System.nanoTime() - started) / 1e9);
+        return worst;
+    }
+
+    private Result run(Path script) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream errStream = new PrintStream(err, true, StandardCharsets.UTF_8);
+
+        long started = System.nanoTime();
+        int status;
+        try {
+            LoxRuntime runtime = Lox.newRuntime(new PrintStream(out, true, StandardCharsets.UTF_8), errStream);
+            Lox.runSource(runtime, Files.readString(script));
+            status = Lox.exitStatus(runtime);
+        } catch (IOException e) {
+            errStream.println("Can't read " + e.getMessage());
+            status = Lox.EXIT_NO_INPUT;
+        }
+        return new Result(script, status, System.nanoTime() - started, out.toByteArray(), err.toByteArray());
+    }
+
+    /**
+     * Waits for a script to finish. One broken script (e.g., one that
+     * overflows the Java stack) shouldn't take down the whole batch.
+     */
+    private static Result await(Path script, Future<Result> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            byte[] message = (e.getCause() + "\n").getBytes(StandardCharsets.UTF_8);
+            return new Result(script, Lox.EXIT_RUNTIME_ERROR, 0, new byte[0], message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,988 @@
+package ca.eddieantonio.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The closure engine: runs programs by first converting every statement and
+ * expression into a tree of Java lambdas ("closure compilation").
+ *
+ * Everything the tree-walking Interpreter works out each time it visits a
+ * node -- which operator it is, how far away a variable lives and which slot
+ * it's in, what a literal's value is -- is worked out once, when the lambda is
+ * made. Running the program is then just calling lambdas, which the JIT inlines
+ * well. Expressions that can only be numbers or booleans get lambdas that
+ * return a primitive double or boolean, so that e.g. `a * b - c < d` boxes
+ * nothing along the way.
+ *
+ * Frames are ordinary Environments, so snapshots, bindings, tasks, and the
+ * isolation checks of parallel functions work just like with the tree walker.
+ * Slots are found by mirroring the Resolver's scopes; see Variables.
+ */
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Code>, Stmt.Visitor<ClosureCompiler.Exec> {
+    interface Code {
+        Object run(Interpreter interpreter, Environment frame);
+    }
+
+    interface NumberCode {
+        double run(Interpreter interpreter, Environment frame);
+    }
+
+    interface Test {
+        boolean run(Interpreter interpreter, Environment frame);
+    }
+
+    /**
+     * Runs a statement. Returns NORMAL, or the value of a return statement.
+     */
+    interface Exec {
+        Object run(Interpreter interpreter, Environment frame);
+    }
+
+    // Statements return this when they don't return from the function.
+    static final Object NORMAL = new Object();
+
+    /**
+     * A function's body, ready to run.
+     */
+    static class Body {
+        final String[] params;
+        final Exec[] statements;
+        final int[] lines;
+        // How many variables its frame will hold.
+        final int size;
+
+        Body(String[] params, Exec[] statements, int[] lines, int size) {
+            this.params = params;
+            this.statements = statements;
+            this.lines = lines;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Where a global variable was found last time, per use of it.
+     */
+    private static class Site {
+        int slot = -1;
+        // For an assignment: 1 if the name might be in an enclosing frame instead, -1 if not, 0 if not known yet.
+        int local = 0;
+
+        /**
+         * @param enclosing the names each enclosing scope declares; null if they aren't known.
+         */
+        boolean mayBeLocal(List<List<String>> enclosing, String name) {
+            if (local == 0) {
+                boolean declared = enclosing == null || enclosing.stream().anyMatch(scope -> scope.contains(name));
+                local = declared ? 1 : -1;
+            }
+            return local > 0;
+        }
+    }
+
+    // Every closure made from the same declaration shares one Body. Guarded by this.
+    // Weak, so that a long-lived runtime doesn't keep every function it has seen;
+    // nodes don't override equals(), so this still goes by identity.
+    private final Map<Stmt.Function, Body> bodies = new WeakHashMap<>();
+    // The names defined in each scope being compiled, in order, innermost last.
+    private final List<List<String>> scopes = new ArrayList<>();
+    // Set while compiling a function without its enclosing scopes, e.g., one restored from a snapshot.
+    private boolean outside = false;
+    // Set to tell the sampler (and --allocations) which line each statement is on.
+    boolean reportLines = false;
+    // Set to count the numbers that arithmetic boxes, for --allocations.
+    boolean countAllocations = false;
+
+    void run(Interpreter interpreter, List<Stmt> program) {
+        Exec[] statements;
+        synchronized (this) {
+            statements = statements(program);
+        }
+        run(statements, lines(program), interpreter, interpreter.globals);
+    }
+
+    /**
+     * Runs the function's body, enclosed by the given closure (which is
+     * either the function's own, or one with 'this' for a method call).
+     */
+    Object call(Interpreter interpreter, LoxFunction function, Environment closure, List<Object> arguments) {
+        Body body = function.body;
+        if (body == null) {
+            // E.g., a function restored from a snapshot.
+            body = bodyOutside(function.declaration);
+            function.body = body;
+        }
+
+        Environment frame = interpreter.newEnvironment(closure, body.size);
+        String[] params = body.params;
+        for (int i = 0; i < params.length; i++) {
+            frame.values.define(i, params[i], arguments.get(i));
+        }
+
+        Object result = run(body.statements, body.lines, interpreter, frame);
+
+        // Always return 'this' in an initializer.
+        if (function.isInitializer) return closure.getAt(0, "this");
+        return result == NORMAL ? null : result;
+    }
+
+    /**
+     * @param lines the line each statement is on, to tell the sampler; or null.
+     */
+    private static Object run(Exec[] statements, int[] lines, Interpreter interpreter, Environment frame) {
+        for (int i = 0; i < statements.length; i++) {
+            if (lines != null) interpreter.reached(lines[i]);
+            Object result = statements[i].run(interpreter, frame);
+            if (result != NORMAL) return result;
+        }
+        return NORMAL;
+    }
+
+    private synchronized Body bodyOutside(Stmt.Function declaration) {
+        outside = true;
+        try {
+            return body(declaration);
+        } finally {
+            outside = false;
+        }
+    }
+
+    synchronized Body body(Stmt.Function declaration) {
+        Body body = bodies.get(declaration);
+        if (body == null) {
+            String[] params = new String[declaration.params.size()];
+            beginScope();
+            for (int i = 0; i < params.length; i++) {
+                params[i] = declaration.params.get(i).lexeme;
+                declare(params[i]);
+            }
+            Exec[] statements = statements(declaration.body);
+            body = new Body(params, statements, lines(declaration.body), endScope());
+            bodies.put(declaration, body);
+        }
+        return body;
+    }
+
+    private void beginScope() {
+        scopes.add(new ArrayList<>());
+    }
+
+    /**
+     * @return how many variables the scope declared.
+     */
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).size();
+    }
+
+    /**
+     * @return the slot the name will be defined in, or -1 for a global.
+     */
+    private int declare(String name) {
+        if (scopes.isEmpty()) return -1;
+        List<String> scope = scopes.get(scopes.size() - 1);
+        scope.add(name);
+        return scope.size() - 1;
+    }
+
+    /**
+     * @return the slot the variable is probably in, or -1 if we can't tell.
+     */
+    private int slot(int distance, String name) {
+        int i = scopes.size() - 1 - distance;
+        // Outside of what we're compiling, e.g., for a function restored from a snapshot.
+        if (i < 0) return -1;
+        return scopes.get(i).indexOf(name);
+    }
+
+    private Exec[] statements(List<Stmt> statements) {
+        Exec[] compiled = new Exec[statements.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = statements.get(i).accept(this);
+        }
+        return compiled;
+    }
+
+    /**
+     * @return the line each statement is on, or null if nobody wants to know.
+     */
+    private int[] lines(List<Stmt> statements) {
+        if (!reportLines) return null;
+
+        int[] lines = new int[statements.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = statements.get(i).line;
+        }
+        return lines;
+    }
+
+    private Code code(Expr expr) {
+        return expr.accept(this);
+    }
+
+    /**
+     * @param number the expression's number code, if it has any; it's boxed
+     *               rather than compiling the expression all over again.
+     */
+    private Code code(Expr expr, NumberCode number) {
+        while (expr instanceof Expr.Grouping grouping) expr = grouping.expression;
+        // A literal is already an object; boxing it again would count an allocation.
+        if (number == null || expr instanceof Expr.Literal) return code(expr);
+        return boxed(number);
+    }
+
+    private Code[] code(List<Expr> exprs) {
+        Code[] compiled = new Code[exprs.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = code(exprs.get(i));
+        }
+        return compiled;
+    }
+
+    /**
+     * @return code for an expression that can only be a number (or an error), or null.
+     */
+    private NumberCode number(Expr expr) {
+        if (expr instanceof Expr.Literal literal && literal.value instanceof Double value) {
+            double constant = value;
+            return (interpreter, frame) -> constant;
+        }
+        if (expr instanceof Expr.Grouping grouping) {
+            return number(grouping.expression);
+        }
+        if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            NumberCode right = number(unary.right);
+            if (right != null) return (interpreter, frame) -> -right.run(interpreter, frame);
+
+            Code operand = code(unary.right);
+            Token operator = unary.operator;
+            return (interpreter, frame) -> {
+                Object value = operand.run(interpreter, frame);
+                Interpreter.checkNumberOperand(operator, value);
+                return -(double) value;
+            };
+        }
+        if (expr instanceof Expr.Binary binary) {
+            return arithmetic(binary);
+        }
+        return null;
+    }
+
+    private NumberCode arithmetic(Expr.Binary expr) {
+        TokenType type = expr.operator.type;
+        if (type != TokenType.MINUS && type != TokenType.STAR && type != TokenType.SLASH && type != TokenType.PLUS) {
+            return null;
+        }
+
+        NumberCode left = number(expr.left);
+        NumberCode right = number(expr.right);
+        if (left != null && right != null) {
+            switch (type) {
+                case MINUS: return (interpreter, frame) -> left.run(interpreter, frame) - right.run(interpreter, frame);
+                case STAR: return (interpreter, frame) -> left.run(interpreter, frame) * right.run(interpreter, frame);
+                case SLASH: return (interpreter, frame) -> left.run(interpreter, frame) / right.run(interpreter, frame);
+                case PLUS: return (interpreter, frame) -> left.run(interpreter, frame) + right.run(interpreter, frame);
+            }
+        }
+
+        // + might be joining strings, unless one side can only be a number.
+        if (type == TokenType.PLUS) return sum(expr, left, right);
+
+        // Like the Interpreter, evaluate both operands before checking either.
+        Code a = code(expr.left, left);
+        Code b = code(expr.right, right);
+        Token operator = expr.operator;
+        switch (type) {
+            case MINUS:
+                return (interpreter, frame) -> {
+                    Object x = a.run(interpreter, frame);
+                    Object y = b.run(interpreter, frame);
+                    Interpreter.checkNumberOperands(operator, x, y);
+                    return (double) x - (double) y;
+                };
+            case STAR:
+                return (interpreter, frame) -> {
+                    Object x = a.run(interpreter, frame);
+                    Object y = b.run(interpreter, frame);
+                    Interpreter.checkNumberOperands(operator, x, y);
+                    return (double) x * (double) y;
+                };
+            default:
+                return (interpreter, frame) -> {
+                    Object x = a.run(interpreter, frame);
+                    Object y = b.run(interpreter, frame);
+                    Interpreter.checkNumberOperands(operator, x, y);
+                    return (double) x / (double) y;
+                };
+        }
+    }
+
+    /**
+     * A + where one side can only be a number, so the other side has to be one too.
+     */
+    private NumberCode sum(Expr.Binary expr, NumberCode left, NumberCode right) {
+        if (left == null && right == null) return null;
+
+        Token operator = expr.operator;
+        if (left == null) {
+            Code a = code(expr.left, left);
+            return (interpreter, frame) -> {
+                Object x = a.run(interpreter, frame);
+                double y = right.run(interpreter, frame);
+                if (!(x instanceof Double)) throw new RuntimeError(operator, "Operands must be two numbers or two strings");
+                return (double) x + y;
+            };
+        }
+
+        Code b = code(expr.right, right);
+        return (interpreter, frame) -> {
+            double x = left.run(interpreter, frame);
+            Object y = b.run(interpreter, frame);
+            if (!(y instanceof Double)) throw new RuntimeError(operator, "Operands must be two numbers or two strings");
+            return x + (double) y;
+        };
+    }
+
+    /**
+     * @return code for an expression, used as a condition.
+     */
+    private Test test(Expr expr) {
+        if (expr instanceof Expr.Grouping grouping) {
+            return test(grouping.expression);
+        }
+        if (expr instanceof Expr.Literal literal) {
+            boolean constant = Interpreter.isTruthy(literal.value);
+            return (interpreter, frame) -> constant;
+        }
+        if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.BANG) {
+            Test right = test(unary.right);
+            return (interpreter, frame) -> !right.run(interpreter, frame);
+        }
+        if (expr instanceof Expr.Logical logical) {
+            Test left = test(logical.left);
+            Test right = test(logical.right);
+            if (logical.operator.type == TokenType.OR) {
+                return (interpreter, frame) -> left.run(interpreter, frame) || right.run(interpreter, frame);
+            }
+            return (interpreter, frame) -> left.run(interpreter, frame) && right.run(interpreter, frame);
+        }
+        if (expr instanceof Expr.Binary binary) {
+            Test comparison = comparison(binary);
+            if (comparison != null) return comparison;
+        }
+
+        Code code = code(expr);
+        return (interpreter, frame) -> Interpreter.isTruthy(code.run(interpreter, frame));
+    }
+
+    private Test comparison(Expr.Binary expr) {
+        TokenType type = expr.operator.type;
+        switch (type) {
+            case GREATER: case GREATER_EQUAL: case LESS: case LESS_EQUAL:
+            case EQUAL_EQUAL: case BANG_EQUAL:
+                break;
+            default:
+                return null;
+        }
+
+        NumberCode left = number(expr.left);
+        NumberCode right = number(expr.right);
+        if (left != null && right != null) {
+            switch (type) {
+                case GREATER: return (interpreter, frame) -> left.run(interpreter, frame) > right.run(interpreter, frame);
+                case GREATER_EQUAL: return (interpreter, frame) -> left.run(interpreter, frame) >= right.run(interpreter, frame);
+                case LESS: return (interpreter, frame) -> left.run(interpreter, frame) < right.run(interpreter, frame);
+                case LESS_EQUAL: return (interpreter, frame) -> left.run(interpreter, frame) <= right.run(interpreter, frame);
+                // Double.equals() semantics, like isEqual(): NaN equals itself, and 0 isn't -0.
+                case EQUAL_EQUAL:
+                    return (interpreter, frame) -> Double.compare(left.run(interpreter, frame), right.run(interpreter, frame)) == 0;
+                case BANG_EQUAL:
+                    return (interpreter, frame) -> Double.compare(left.run(interpreter, frame), right.run(interpreter, frame)) != 0;
+            }
+        }
+
+        Code a = code(expr.left, left);
+        Code b = code(expr.right, right);
+        Token operator = expr.operator;
+        switch (type) {
+            case EQUAL_EQUAL:
+                return (interpreter, frame) -> Interpreter.isEqual(a.run(interpreter, frame), b.run(interpreter, frame));
+            case BANG_EQUAL:
+                return (interpreter, frame) -> !Interpreter.isEqual(a.run(interpreter, frame), b.run(interpreter, frame));
+            case GREATER:
+                return (interpreter, frame) -> {
+                    Object x = a.run(interpreter, frame);
+                    Object y = b.run(interpreter, frame);
+                    Interpreter.checkNumberOperands(operator, x, y);
+                    return (double) x > (double) y;
+                };
+            case GREATER_EQUAL:
+                return (interpreter, frame) -> {
+                    Object x = a.run(interpreter, frame);
+                    Object y = b.run(interpreter, frame);
+                    Interpreter.checkNumberOperands(operator, x, y);
+                    return (double) x >= (double) y;
+                };
+            case LESS:
+                return (interpreter, frame) -> {
+                    Object x = a.run(interpreter, frame);
+                    Object y = b.run(interpreter, frame);
+                    Interpreter.checkNumberOperands(operator, x, y);
+                    return (double) x < (double) y;
+                };
+            default:
+                return (interpreter, frame) -> {
+                    Object x = a.run(interpreter, frame);
+                    Object y = b.run(interpreter, frame);
+                    Interpreter.checkNumberOperands(operator, x, y);
+                    return (double) x <= (double) y;
+                };
+        }
+    }
+
+    private Code lookUp(Token name, Expr expr) {
+        int distance = expr.depth;
+        String lexeme = name.lexeme;
+        if (distance < 0) {
+            Site site = new Site();
+            return (interpreter, frame) -> {
+                Variables globals = interpreter.globals.values;
+                int slot = globals.slotOf(site.slot, lexeme);
+                if (slot < 0) throw undefined(name);
+                site.slot = slot;
+                return globals.valueAt(slot);
+            };
+        }
+
+        int slot = slot(distance, lexeme);
+        switch (distance) {
+            case 0:
+                return (interpreter, frame) -> frame.values.get(slot, lexeme);
+            case 1:
+                return (interpreter, frame) -> frame.enclosing.values.get(slot, lexeme);
+            default:
+                int depth = distance;
+                return (interpreter, frame) -> frame.ancestor(depth).values.get(slot, lexeme);
+        }
+    }
+
+    private static RuntimeError undefined(Token name) {
+        return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    // Statements:
+
+    @Override
+    public Exec visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        Exec[] statements = statements(stmt.statements);
+        int[] lines = lines(stmt.statements);
+        int size = endScope();
+        if (reportLines) {
+            // E.g., a loop's body, which isn't run from a list of statements that would report its line.
+            int line = stmt.line;
+            return (interpreter, frame) -> {
+                interpreter.tick();
+                interpreter.reached(line);
+                return run(statements, lines, interpreter, interpreter.newEnvironment(frame, size));
+            };
+        }
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            return run(statements, lines, interpreter, interpreter.newEnvironment(frame, size));
+        };
+    }
+
+    @Override
+    public Exec visitClassStmt(Stmt.Class stmt) {
+        Token name = stmt.name;
+        int slot = declare(name.lexeme);
+        Code superclassCode = stmt.superclass == null ? null : code(stmt.superclass);
+
+        // Mirror the Resolver's scopes for 'super' and 'this'.
+        if (stmt.superclass != null) {
+            beginScope();
+            declare("super");
+        }
+        beginScope();
+        declare("this");
+        List<Stmt.Function> methods = stmt.methods;
+        Body[] methodBodies = new Body[methods.size()];
+        for (int i = 0; i < methodBodies.length; i++) {
+            methodBodies[i] = body(methods.get(i));
+        }
+        endScope();
+        if (stmt.superclass != null) endScope();
+
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            Object superclass = null;
+            if (superclassCode != null) {
+                superclass = superclassCode.run(interpreter, frame);
+                if (!(superclass instanceof LoxClass)) {
+                    throw new RuntimeError(stmt.superclass.name, "Superclass must be a class");
+                }
+            }
+
+            frame.values.define(slot, name.lexeme, null);
+
+            // Methods close over an environment that keeps a reference to the actual superclass.
+            Environment environment = frame;
+            if (superclass != null) {
+                environment = interpreter.newEnvironment(frame);
+                environment.define("super", superclass);
+            }
+
+            Map<String, LoxFunction> functions = new HashMap<>();
+            for (int i = 0; i < methodBodies.length; i++) {
+                Stmt.Function method = methods.get(i);
+                boolean isInitializer = method.name.lexeme.equals("init");
+                functions.put(method.name.lexeme, new LoxFunction(method, environment, isInitializer, methodBodies[i]));
+            }
+
+            LoxClass klass = new LoxClass(name.lexeme, (LoxClass) superclass, functions);
+            interpreter.allocated();
+            Events.classDefined(klass, name);
+            frame.values.put(slot, name.lexeme, klass);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitExpressionStmt(Stmt.Expression stmt) {
+        Code expression = code(stmt.expression);
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            expression.run(interpreter, frame);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitForStmt(Stmt.For stmt) {
+        // Mirror the Resolver: the counter's scope is the only one.
+        beginScope();
+        Code initializer = code(stmt.counter.initializer);
+        String name = stmt.counter.name.lexeme;
+        int slot = declare(name);
+        Code boundCode = code(stmt.condition.right);
+        Exec body = stmt.body.accept(this);
+        endScope();
+
+        Token operator = stmt.condition.operator;
+        TokenType comparison = operator.type;
+        double step = Interpreter.step(stmt);
+        boolean invariant = stmt.invariant;
+        int line = stmt.line;
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            Environment loop = interpreter.newEnvironment(frame, 1);
+            Object start = initializer.run(interpreter, loop);
+            loop.values.define(slot, name, start);
+
+            Object bound = boundCode.run(interpreter, loop);
+            Interpreter.checkNumberOperands(operator, start, bound);
+
+            double counter = (double) start;
+            double limit = (double) bound;
+            while (Interpreter.compare(comparison, counter, limit)) {
+                Object result = body.run(interpreter, loop);
+                if (result != NORMAL) return result;
+
+                interpreter.tick();
+                counter += step;
+                loop.values.setValueAt(slot, counter);
+                if (interpreter.allocations != null) interpreter.allocations.count(Allocations.Kind.NUMBER, line);
+
+                if (!invariant || interpreter.scheduler.isConcurrent()) {
+                    bound = boundCode.run(interpreter, loop);
+                    Interpreter.checkNumberOperands(operator, counter, bound);
+                    limit = (double) bound;
+                }
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitFunctionStmt(Stmt.Function stmt) {
+        String name = stmt.name.lexeme;
+        // Declared first, so that the function can call itself.
+        int slot = declare(name);
+        Body body = body(stmt);
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            interpreter.allocated();
+            frame.values.define(slot, name, new LoxFunction(stmt, frame, false, body));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitIfStmt(Stmt.If stmt) {
+        Test condition = test(stmt.condition);
+        Exec thenBranch = stmt.thenBranch.accept(this);
+        if (stmt.elseBranch == null) {
+            return (interpreter, frame) -> {
+                interpreter.tick();
+                return condition.run(interpreter, frame) ? thenBranch.run(interpreter, frame) : NORMAL;
+            };
+        }
+
+        Exec elseBranch = stmt.elseBranch.accept(this);
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            return condition.run(interpreter, frame) ? thenBranch.run(interpreter, frame) : elseBranch.run(interpreter, frame);
+        };
+    }
+
+    @Override
+    public Exec visitPrintStmt(Stmt.Print stmt) {
+        NumberCode number = number(stmt.expression);
+        if (number != null) {
+            return (interpreter, frame) -> {
+                interpreter.tick();
+                interpreter.out.println(number.run(interpreter, frame));
+                return NORMAL;
+            };
+        }
+
+        Code expression = code(stmt.expression);
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            Object value = expression.run(interpreter, frame);
+            if (value instanceof Double n) {
+                interpreter.out.println((double) n);
+            } else {
+                interpreter.out.println(Interpreter.stringify(value));
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            return (interpreter, frame) -> {
+                interpreter.tick();
+                return null;
+            };
+        }
+
+        Code value = code(stmt.value);
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            return value.run(interpreter, frame);
+        };
+    }
+
+    @Override
+    public Exec visitVarStmt(Stmt.Var stmt) {
+        String name = stmt.name.lexeme;
+        Code initializer = stmt.initializer == null ? null : code(stmt.initializer);
+        int slot = declare(name);
+        if (slot < 0) {
+            // A global, which might be a constant, from this program or an earlier one.
+            Token token = stmt.name;
+            boolean constant = stmt.constant;
+            return (interpreter, frame) -> {
+                interpreter.tick();
+                Object value = initializer == null ? null : initializer.run(interpreter, frame);
+                frame.checkNotConstant(token);
+                if (constant) {
+                    frame.defineConstant(name, value);
+                } else {
+                    frame.define(name, value);
+                }
+                return NORMAL;
+            };
+        }
+        if (initializer == null) {
+            return (interpreter, frame) -> {
+                interpreter.tick();
+                frame.values.define(slot, name, null);
+                return NORMAL;
+            };
+        }
+
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            frame.values.define(slot, name, initializer.run(interpreter, frame));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitWhileStmt(Stmt.While stmt) {
+        Test condition = test(stmt.condition);
+        Exec body = stmt.body.accept(this);
+        return (interpreter, frame) -> {
+            interpreter.tick();
+            while (condition.run(interpreter, frame)) {
+                Object result = body.run(interpreter, frame);
+                if (result != NORMAL) return result;
+            }
+            return NORMAL;
+        };
+    }
+
+    // Expressions:
+
+    @Override
+    public Code visitAssignExpr(Expr.Assign expr) {
+        Code value = code(expr.value);
+        Token name = expr.name;
+        int distance = expr.depth;
+        String lexeme = name.lexeme;
+        if (distance < 0) {
+            Site site = new Site();
+            // Only a name that an enclosing scope declares can be in a frame. Their
+            // lists are finished by the time this runs, so which is known then.
+            List<List<String>> scopeNames = outside ? null : new ArrayList<>(scopes);
+            return (interpreter, frame) -> {
+                Object result = value.run(interpreter, frame);
+                interpreter.checkCanAssign(interpreter.globals, name);
+                if (site.local >= 0 && site.mayBeLocal(scopeNames, lexeme)
+                        && assignInFrame(interpreter, frame, name, result)) {
+                    return result;
+                }
+
+                Variables globals = interpreter.globals.values;
+                int slot = globals.slotOf(site.slot, lexeme);
+                if (slot < 0) throw undefined(name);
+                interpreter.globals.checkNotConstant(name);
+                site.slot = slot;
+                globals.setValueAt(slot, result);
+                return result;
+            };
+        }
+
+        int depth = distance;
+        int slot = slot(depth, lexeme);
+        return (interpreter, frame) -> {
+            Object result = value.run(interpreter, frame);
+            Environment target = frame.ancestor(depth);
+            interpreter.checkCanAssign(target, name);
+            target.values.put(slot, lexeme, result);
+            return result;
+        };
+    }
+
+    /**
+     * Like the tree walker, assigns a variable that wasn't resolved to whichever
+     * enclosing frame has it by now, e.g., a block's variable declared after the
+     * function that assigns it.
+     *
+     * @return false if it's not in any frame, so it must be a global.
+     */
+    private static boolean assignInFrame(Interpreter interpreter, Environment frame, Token name, Object value) {
+        for (Environment enclosing = frame; enclosing != interpreter.globals && enclosing != null;
+                enclosing = enclosing.enclosing) {
+            if (enclosing.values.containsKey(name.lexeme)) {
+                enclosing.assign(name, value);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Code visitBinaryExpr(Expr.Binary expr) {
+        Test comparison = comparison(expr);
+        if (comparison != null) return (interpreter, frame) -> comparison.run(interpreter, frame);
+
+        NumberCode number = arithmetic(expr);
+        if (number != null) return boxed(number);
+
+        // Only + is left: numbers, or strings.
+        Code a = code(expr.left);
+        Code b = code(expr.right);
+        Token operator = expr.operator;
+        return (interpreter, frame) -> {
+            Object left = a.run(interpreter, frame);
+            Object right = b.run(interpreter, frame);
+            if (left instanceof Double x && right instanceof Double y) {
+                interpreter.noteAllocation(Allocations.Kind.NUMBER);
+                return x + y;
+            }
+            if (left instanceof String x && right instanceof String y) {
+                return interpreter.concatenate(operator, x, y);
+            }
+            throw new RuntimeError(operator, "Operands must be two numbers or two strings");
+        };
+    }
+
+    @Override
+    public Code visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) return methodCall(get, expr);
+
+        Code callee = code(expr.callee);
+        Code[] arguments = code(expr.arguments);
+        Token paren = expr.paren;
+        return (interpreter, frame) -> {
+            Object function = callee.run(interpreter, frame);
+
+            interpreter.noteAllocation(Allocations.Kind.ARGUMENTS);
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i].run(interpreter, frame);
+            }
+
+            if (!(function instanceof LoxCallable callable)) {
+                throw new RuntimeError(paren, "Can only call functions and classes");
+            }
+            Interpreter.checkArity(callable, values.length, paren);
+            return interpreter.call(callable, Arrays.asList(values), paren);
+        };
+    }
+
+    /**
+     * Calls `object.name(...)`, without binding the method first if it is one.
+     */
+    private Code methodCall(Expr.Get get, Expr.Call expr) {
+        Code object = code(get.object);
+        Token name = get.name;
+        String lexeme = name.lexeme;
+        Code[] arguments = code(expr.arguments);
+        Token paren = expr.paren;
+        return (interpreter, frame) -> {
+            Object receiver = object.run(interpreter, frame);
+            LoxFunction method = receiver instanceof LoxInstance instance ? instance.findMethod(lexeme) : null;
+            Object function = method != null ? method : Interpreter.getProperty(receiver, name);
+
+            interpreter.noteAllocation(Allocations.Kind.ARGUMENTS);
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i].run(interpreter, frame);
+            }
+
+            if (!(function instanceof LoxCallable callable)) {
+                throw new RuntimeError(paren, "Can only call functions and classes");
+            }
+            Interpreter.checkArity(callable, values.length, paren);
+            if (method != null) return interpreter.call(method, (LoxInstance) receiver, Arrays.asList(values), paren);
+            return interpreter.call(callable, Arrays.asList(values), paren);
+        };
+    }
+
+    @Override
+    public Code visitGetExpr(Expr.Get expr) {
+        Code object = code(expr.object);
+        Token name = expr.name;
+        String lexeme = name.lexeme;
+        // Where the field was last time, which is probably where it is in this instance too.
+        Site site = new Site();
+        return (interpreter, frame) -> {
+            Object value = object.run(interpreter, frame);
+            if (value instanceof LoxInstance instance) {
+                Variables fields = instance.fields;
+                int slot = fields.slotOf(site.slot, lexeme);
+                if (slot >= 0) {
+                    site.slot = slot;
+                    return fields.valueAt(slot);
+                }
+                // Not a field, so it's a method that has to be bound (or an error).
+                interpreter.noteAllocation(Allocations.Kind.BOUND_METHOD);
+            }
+            return Interpreter.getProperty(value, name);
+        };
+    }
+
+    @Override
+    public Code visitGroupingExpr(Expr.Grouping expr) {
+        return code(expr.expression);
+    }
+
+    @Override
+    public Code visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return (interpreter, frame) -> value;
+    }
+
+    @Override
+    public Code visitLogicalExpr(Expr.Logical expr) {
+        Code left = code(expr.left);
+        Code right = code(expr.right);
+        if (expr.operator.type == TokenType.OR) {
+            return (interpreter, frame) -> {
+                Object value = left.run(interpreter, frame);
+                return Interpreter.isTruthy(value) ? value : right.run(interpreter, frame);
+            };
+        }
+        return (interpreter, frame) -> {
+            Object value = left.run(interpreter, frame);
+            return !Interpreter.isTruthy(value) ? value : right.run(interpreter, frame);
+        };
+    }
+
+    @Override
+    public Code visitSetExpr(Expr.Set expr) {
+        Code object = code(expr.object);
+        Code value = code(expr.value);
+        Token name = expr.name;
+        return (interpreter, frame) -> {
+            if (!(object.run(interpreter, frame) instanceof LoxInstance instance)) {
+                throw new RuntimeError(name, "Only instances have fields.");
+            }
+
+            Object result = value.run(interpreter, frame);
+            interpreter.checkCanSet(instance, name);
+            instance.set(name, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Code visitSuperExpr(Expr.Super expr) {
+        int distance = expr.depth;
+        Token method = expr.method;
+        return (interpreter, frame) -> {
+            Environment environment = frame.ancestor(distance - 1);
+            LoxClass superclass = (LoxClass) environment.enclosing.values.get(0, "super");
+            // `this` is ALWAYS 1 level up in the environment chain.
+            LoxInstance object = (LoxInstance) environment.values.get(0, "this");
+            LoxFunction function = superclass.findMethod(method.lexeme);
+            if (function == null) {
+                throw new RuntimeError(method, "Undefined method '" + method.lexeme + "'.");
+            }
+            interpreter.noteAllocation(Allocations.Kind.BOUND_METHOD);
+            return function.bind(object);
+        };
+    }
+
+    @Override
+    public Code visitThisExpr(Expr.This expr) {
+        return lookUp(expr.keyword, expr);
+    }
+
+    @Override
+    public Code visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.BANG) {
+            Test test = test(expr);
+            return (interpreter, frame) -> test.run(interpreter, frame);
+        }
+
+        return boxed(number(expr));
+    }
+
+    /**
+     * @return code for the number, as an object.
+     */
+    private Code boxed(NumberCode number) {
+        if (!countAllocations) return (interpreter, frame) -> number.run(interpreter, frame);
+
+        return (interpreter, frame) -> {
+            double value = number.run(interpreter, frame);
+            interpreter.noteAllocation(Allocations.Kind.NUMBER);
+            return value;
+        };
+    }
+
+    @Override
+    public Code visitVariableExpr(Expr.Variable expr) {
+        return lookUp(expr.name, expr);
+    }
+}
@@ -0,0 +1,161 @@
+package ca.eddieantonio.lox;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how many times each statement and expression ran, and each
+ * function was called, and how long they took in total, for the AstPrinter
+ * to annotate the program with (jlox --coverage).
+ *
+ * Like the Profiler, each interpreter (i.e., each task) counts into its own
+ * Counts, and they're only added up for printing. Time in a node that's
+ * running inside itself (i.e., recursion) is counted once, by the outermost.
+ */
+class Coverage {
+    private static final int HITS = 0;
+    private static final int NANOS = 1;
+    private static final int ACTIVE = 2;
+
+    // Guarded by this.
+    private final List<Counts> counts = new ArrayList<>();
+    private final List<Program> programs = new ArrayList<>();
+    private Map<Object, long[]> total = null;
+    private Map<Object, long[]> totalCalls = null;
+
+    /**
+     * What one interpreter ran.
+     */
+    final class Counts {
+        private final Map<Object, long[]> nodes = new IdentityHashMap<>();
+        // Function declarations run once, but their bodies run once per call.
+        private final Map<Object, long[]> calls = new IdentityHashMap<>();
+
+        private Counts() {
+            synchronized (Coverage.this) {
+                counts.add(this);
+            }
+        }
+
+        /**
+         * @return counts for another task.
+         */
+        Counts fork() {
+            return new Counts();
+        }
+
+        /**
+         * Counts one run of the node.
+         *
+         * @return what to give to exit() when the node is done.
+         */
+        long[] enter(Object node) {
+            return enter(nodes, node);
+        }
+
+        /**
+         * Counts one call to the function.
+         *
+         * @return what to give to exit() when the call returns.
+         */
+        long[] call(Stmt.Function declaration) {
+            return enter(calls, declaration);
+        }
+
+        /**
+         * Counts one run of a node that takes no time of its own, e.g., the
+         * get of a method that's called without being bound.
+         */
+        void hit(Object node) {
+            exit(enter(node), System.nanoTime());
+        }
+
+        private long[] enter(Map<Object, long[]> nodes, Object node) {
+            long[] cell = nodes.get(node);
+            if (cell == null) {
+                cell = new long[3];
+                nodes.put(node, cell);
+            }
+            cell[HITS]++;
+            cell[ACTIVE]++;
+            return cell;
+        }
+
+        void exit(long[] cell, long started) {
+            if (--cell[ACTIVE] == 0) cell[NANOS] += System.nanoTime() - started;
+        }
+    }
+
+    Counts newCounts() {
+        return new Counts();
+    }
+
+    synchronized void executed(Program program) {
+        programs.add(program);
+    }
+
+    /**
+     * @return every program that ran, in order.
+     */
+    synchronized List<Program> programs() {
+        return new ArrayList<>(programs);
+    }
+
+    /**
+     * @return how many times the node ran, in every task.
+     */
+    long hits(Object node) {
+        long[] cell = total().get(node);
+        return cell == null ? 0 : cell[HITS];
+    }
+
+    /**
+     * @return how long the node took altogether, in every task.
+     */
+    long nanos(Object node) {
+        long[] cell = total().get(node);
+        return cell == null ? 0 : cell[NANOS];
+    }
+
+    /**
+     * @return how many times the function was called, in every task.
+     */
+    long calls(Stmt.Function declaration) {
+        long[] cell = totalCalls().get(declaration);
+        return cell == null ? 0 : cell[HITS];
+    }
+
+    /**
+     * @return how long calls to the function took altogether, in every task.
+     */
+    long callNanos(Stmt.Function declaration) {
+        long[] cell = totalCalls().get(declaration);
+        return cell == null ? 0 : cell[NANOS];
+    }
+
+    private synchronized Map<Object, long[]> total() {
+        if (total == null) {
+            total = new IdentityHashMap<>();
+            for (Counts each : counts) add(each.nodes, total);
+        }
+        return total;
+    }
+
+    private synchronized Map<Object, long[]> totalCalls() {
+        if (totalCalls == null) {
+            totalCalls = new IdentityHashMap<>();
+            for (Counts each : counts) add(each.calls, totalCalls);
+        }
+        return totalCalls;
+    }
+
+    private static void add(Map<Object, long[]> counts, Map<Object, long[]> total) {
+        for (Map.Entry<Object, long[]> node : counts.entrySet()) {
+            long[] cell = total.computeIfAbsent(node.getKey(), key -> new long[2]);
+            cell[HITS] += node.getValue()[HITS];
+            cell[NANOS] += node.getValue()[NANOS];
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package ca.eddieantonio.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A long-lived jlox that runs scripts sent to it over a Unix domain socket.
+ *
+ * Scripts run by the daemon skip JVM startup and get code that the JIT has
+ * already compiled. Every script still gets its own LoxRuntime.
+ *
+ * The protocol is simple. The client sends a request:
+ *
+ *     int MAGIC, byte PATH or SOURCE, int length, UTF-8 bytes
+ *
+ * and the daemon replies with any number of frames, ending with EXIT:
+ *
+ *     byte STDOUT or STDERR, int length, bytes
+ *     byte EXIT, int status
+ *
+ * Requests are at most MAX_REQUEST bytes. The client sends nothing else,
+ * and keeps the connection open until EXIT; if it hangs up first, the
+ * script is cancelled.
+ *
+ * Anyone who can connect to the socket can run code as us, and anyone who
+ * can replace it sees our scripts and makes up their output. So the socket
+ * lives in a directory only we can get into, and both ends check that.
+ *
+ * Scripts run with the daemon's own options (-O, --engine, limits, and
+ * snapshot), not the client's.
+ */
+class Daemon {
+    static final int MAGIC = 0x4c4f5844; // "LOXD"
+
+    // Request kinds.
+    static final byte PATH = 1, SOURCE = 2;
+
+    // Reply frames.
+    static final byte STDOUT = 1, STDERR = 2, EXIT = 3;
+
+    // Plenty for a path or a script, and small enough to read all at once.
+    static final int MAX_REQUEST = 16 << 20;
+
+    private final Path socket;
+
+    Daemon(Path socket) {
+        this.socket = socket;
+    }
+
+    /**
+     * @return $JLOX_SOCKET; or a socket in $XDG_RUNTIME_DIR; or else one in a
+     * directory of the temporary directory that's just for this user.
+     */
+    static Path defaultSocket() {
+        String socket = System.getenv("JLOX_SOCKET");
+        if (socket != null && !socket.isEmpty()) return Paths.get(socket).toAbsolutePath();
+        String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDirectory != null && !runtimeDirectory.isEmpty()) return Paths.get(runtimeDirectory, "jlox.sock");
+        return Paths.get(System.getProperty("java.io.tmpdir"), "jlox-" + System.getProperty("user.name"), "daemon.sock");
+    }
+
+    /**
+     * Makes sure that nobody else could have made, or could replace, the socket.
+     *
+     * @throws IOException saying why not, if they could.
+     */
+    static void checkPrivate(Path socket) throws IOException {
+        Path directory = socket.toAbsolutePath().getParent();
+        UserPrincipal me = FileSystems.getDefault().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+
+        // Not following links, since someone else's link to our directory is theirs to change.
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)
+                || !Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS).equals(me)) {
+            throw new IOException(directory + " isn't a directory that belongs to " + me.getName());
+        }
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS);
+        if (!PosixFilePermissions.fromString("rwx------").containsAll(permissions)) {
+            throw new IOException(directory + " can be used by others; it should be "
+                    + "rwx------, not " + PosixFilePermissions.toString(permissions));
+        }
+        if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)
+                && !Files.getOwner(socket, LinkOption.NOFOLLOW_LINKS).equals(me)) {
+            throw new IOException(socket + " doesn't belong to " + me.getName());
+        }
+    }
+
+    void serve() throws IOException {
+        // Make our own directory, so that the socket is private from the moment it's bound.
+        Path directory = socket.toAbsolutePath().getParent();
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+                            PosixFilePermission.OWNER_EXECUTE)));
+        }
+        checkPrivate(socket);
+
+        // A socket file left behind by a daemon that died would stop us from binding.
+        Files.deleteIfExists(socket);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException e) {
+                    // We're exiting anyway.
+                }
+            }));
+            System.err.println("jlox daemon listening on " + socket);
+
+            for (;;) {
+                SocketChannel client = server.accept();
+                Thread thread = new Thread(() -> handle(client), "jlox-client");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+
+            if (in.readInt() != MAGIC) return;
+            byte kind = in.readByte();
+            int length = in.readInt();
+
+            PrintStream stderr = new PrintStream(new FrameOutputStream(out, STDERR), true, StandardCharsets.UTF_8);
+            PrintStream stdout = new PrintStream(new FrameOutputStream(out, STDOUT), true, StandardCharsets.UTF_8);
+
+            // The client waits for EXIT no matter what, so always send one.
+            int status = Lox.EXIT_RUNTIME_ERROR;
+            try {
+                if (length < 0 || length > MAX_REQUEST) {
+                    stderr.println("jlox daemon: a request can't be " + length + " bytes long; the limit is "
+                            + MAX_REQUEST);
+                    status = Lox.EXIT_USAGE;
+                } else {
+                    byte[] request = new byte[length];
+                    in.readFully(request);
+                    status = run(kind, new String(request, StandardCharsets.UTF_8), client, stdout, stderr);
+                }
+            } finally {
+                synchronized (out) {
+                    out.writeByte(EXIT);
+                    out.writeInt(status);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; nothing to tell it.
+        }
+    }
+
+    /**
+     * @return the script's exit status.
+     */
+    private static int run(byte kind, String request, SocketChannel client, PrintStream stdout, PrintStream stderr) {
+        try {
+            LoxRuntime runtime = Lox.newRuntime(stdout, stderr);
+            cancelWhenGone(client, runtime);
+            String source = kind == PATH ? Files.readString(Paths.get(request)) : request;
+            Lox.runSource(runtime, source);
+            return Lox.exitStatus(runtime);
+        } catch (IOException e) {
+            stderr.println("Can't read " + e.getMessage());
+            return Lox.EXIT_NO_INPUT;
+        } catch (RuntimeException | Error e) {
+            // Don't let one script's bug (or ours) take down the daemon.
+            stderr.println("jlox daemon: " + e);
+            return Lox.EXIT_RUNTIME_ERROR;
+        }
+    }
+
+    /**
+     * Cancels the run once the client hangs up, so that a script nobody is
+     * waiting for doesn't keep running (and printing to nobody) forever.
+     */
+    private static void cancelWhenGone(SocketChannel client, LoxRuntime runtime) {
+        Thread watcher = new Thread(() -> {
+            try {
+                // Clients send nothing after the request, so anything but blocking means they're gone.
+                // Not through a stream from Channels: that would hold up writing the output until we read something.
+                client.read(ByteBuffer.allocate(1));
+            } catch (IOException e) {
+                // Including when we close the connection ourselves, once the run is over.
+            }
+            runtime.cancel();
+        }, "jlox-client-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Sends everything written to it as frames of one kind.
+     * Tasks may print at the same time, so frames are written one at a time.
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte kind;
+
+        FrameOutputStream(DataOutputStream out, byte kind) {
+            this.out = out;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (out) {
+                out.writeByte(kind);
+                out.writeInt(length);
+                out.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
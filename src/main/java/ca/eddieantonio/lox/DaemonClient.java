@@ -0,0 +1,76 @@
+package ca.eddieantonio.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * What ./jlox runs: if a daemon is listening, asks it to run the script;
+ * otherwise, runs it right here, just like Lox would. The daemon runs it
+ * with the daemon's options, not ours.
+ *
+ * This class is deliberately tiny, so that it starts quickly.
+ */
+public class DaemonClient {
+    public static void main(String[] args) throws IOException {
+        // Only plain `jlox script.lox` goes to the daemon; everything else is local.
+        Path socket = Daemon.defaultSocket();
+        if (args.length != 1 || args[0].startsWith("-") || !Files.exists(socket)) {
+            Lox.main(args);
+            return;
+        }
+
+        try {
+            Daemon.checkPrivate(socket);
+        } catch (IOException e) {
+            // Whoever made it would see our script, and could tell us anything about how it went.
+            System.err.println("jlox: not using the daemon: " + e.getMessage());
+            Lox.main(args);
+            return;
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            // The daemon isn't running anymore.
+            Lox.main(args);
+            return;
+        }
+
+        System.exit(run(channel, Paths.get(args[0]).toAbsolutePath().toString()));
+    }
+
+    private static int run(SocketChannel channel, String path) throws IOException {
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            byte[] request = path.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(Daemon.MAGIC);
+            out.writeByte(Daemon.PATH);
+            out.writeInt(request.length);
+            out.write(request);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            for (;;) {
+                byte kind = in.readByte();
+                if (kind == Daemon.EXIT) return in.readInt();
+
+                PrintStream stream = kind == Daemon.STDOUT ? System.out : System.err;
+                stream.write(in.readNBytes(in.readInt()));
+                stream.flush();
+            }
+        }
+    }
+}
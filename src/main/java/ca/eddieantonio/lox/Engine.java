@@ -0,0 +1,13 @@
+package ca.eddieantonio.lox;
+
+/**
+ * How a LoxRuntime runs programs.
+ */
+public enum Engine {
+    /** Walk the syntax tree with a visitor. */
+    TREE,
+    /** Walk the syntax tree, dispatching on each node's kind with a switch instead of a visitor. */
+    SWITCH,
+    /** Convert the syntax tree into Java lambdas first; see ClosureCompiler. */
+    CLOSURE,
+}
@@ -1,18 +1,32 @@
 package ca.eddieantonio.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
 public class Environment {
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    final Variables values;
+    // The isolated interpreter that made this environment, or null if it is shared.
+    final Interpreter owner;
+    // The globals defined with 'const', so later programs can't change them either; null until there are any.
+    private Set<String> constants = null;
 
     Environment() {
-        enclosing = null;
+        this(null, null);
     }
 
     Environment(Environment enclosing) {
+        this(enclosing, null);
+    }
+
+    Environment(Environment enclosing, Interpreter owner) {
+        this(enclosing, owner, Variables.DEFAULT_CAPACITY);
+    }
+
+    Environment(Environment enclosing, Interpreter owner, int capacity) {
         this.enclosing = enclosing;
+        this.owner = owner;
+        this.values = new Variables(capacity);
     }
 
     Object get(Token name) {
@@ -29,6 +43,37 @@ public class Environment {
         values.put(name, value);
     }
 
+    void defineConstant(String name, Object value) {
+        define(name, value);
+        if (constants == null) constants = new HashSet<>();
+        constants.add(name);
+    }
+
+    /**
+     * @return the names defined with 'const' here.
+     */
+    Set<String> constants() {
+        return constants == null ? Set.of() : Set.copyOf(constants);
+    }
+
+    /**
+     * Makes exactly these names the constants, e.g., to undo a run that defined more.
+     */
+    void setConstants(Set<String> names) {
+        constants = names.isEmpty() ? null : new HashSet<>(names);
+    }
+
+    /**
+     * Throws if the name was defined with 'const' here. The Resolver
+     * catches this before the program runs; this catches programs that
+     * were resolved before the constant was defined, e.g., cached ones.
+     */
+    void checkNotConstant(Token name) {
+        if (constants != null && constants.contains(name.lexeme)) {
+            throw new RuntimeError(name, "Can't assign to the constant '" + name.lexeme + "'.");
+        }
+    }
+
     public Object getAt(int distance, String name) {
         return ancestor(distance).values.get(name);
     }
@@ -46,6 +91,7 @@ public class Environment {
 
     public void assign(Token name, Object value) {
         if (values.containsKey(name.lexeme)) {
+            checkNotConstant(name);
             values.put(name.lexeme, value);
             return;
         }
@@ -0,0 +1,64 @@
+package ca.eddieantonio.lox;
+
+import java.io.PrintStream;
+
+/**
+ * Reports static and runtime errors, and remembers whether there were any.
+ *
+ * Every LoxRuntime has its own, so that scripts running side-by-side don't
+ * see each other's errors.
+ */
+class ErrorReporter {
+    private final PrintStream err;
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+    boolean hadLimitExceeded = false;
+
+    ErrorReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    /**
+     * Report an error.
+     * @param line line number the error occurred on.
+     * @param where idk lol
+     * @param message English message
+     */
+    void report(int line, String where, String message) {
+        err.println(
+                "[line " + line + "] Error" + where + ": " + message
+        );
+        hadError = true;
+    }
+
+    void runtimeError(RuntimeError error) {
+        if (error.token == null) {
+            // Called from Java, so there is no line to blame.
+            err.println(error.getMessage());
+        } else {
+            err.println(error.getMessage()
+                    + "\n[line " + error.token.line + "]");
+        }
+        hadRuntimeError = true;
+        if (error instanceof LimitExceeded) hadLimitExceeded = true;
+        Events.runtimeError(error);
+    }
+
+    void reset() {
+        hadError = false;
+        hadRuntimeError = false;
+        hadLimitExceeded = false;
+    }
+}
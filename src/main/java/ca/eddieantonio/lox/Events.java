@@ -0,0 +1,152 @@
+package ca.eddieantonio.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events, so that what Lox is doing shows up in a
+ * recording, next to GCs, safepoints, and everything else. e.g.,
+ *
+ *     java -XX:StartFlightRecording=filename=lox.jfr -jar jlox.jar script.lox
+ *     jfr print --categories Lox lox.jfr
+ *
+ * Loading the first event class starts up a good part of JFR, which takes
+ * a few hundred milliseconds, so nothing here touches them unless Flight
+ * Recorder is already running. Slow calls can be made to mean something
+ * other than 10 ms by setting ca.eddieantonio.lox.Call#threshold in the
+ * recording's settings.
+ */
+final class Events {
+    private Events() {}
+
+    @Name("ca.eddieantonio.lox.Phase")
+    @Label("Lox Phase")
+    @Description("Scanning, parsing, resolving, or interpreting a program")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        final String phase;
+
+        PhaseEvent(String phase) {
+            this.phase = phase;
+        }
+    }
+
+    @Name("ca.eddieantonio.lox.Call")
+    @Label("Lox Call")
+    @Description("A slow call to a Lox function, class, or native")
+    @Category("Lox")
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static final class CallEvent extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Declared On Line")
+        int line;
+
+        @Label("Called From Line")
+        int callLine;
+    }
+
+    @Name("ca.eddieantonio.lox.ClassDefinition")
+    @Label("Lox Class Definition")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class ClassEvent extends Event {
+        @Label("Class")
+        String name;
+
+        @Label("Superclass")
+        String superclass;
+
+        @Label("Methods")
+        int methods;
+
+        @Label("Line")
+        int line;
+    }
+
+    @Name("ca.eddieantonio.lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    @StackTrace(false)
+    static final class RuntimeErrorEvent extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+
+    /**
+     * @return whether Flight Recorder is running, e.g., with -XX:StartFlightRecording, or since jcmd JFR.start.
+     */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * @return the phase's event, or null if nothing is recording.
+     */
+    static PhaseEvent beginPhase(String phase) {
+        if (!recording()) return null;
+        PhaseEvent event = new PhaseEvent(phase);
+        event.begin();
+        return event;
+    }
+
+    static void endPhase(PhaseEvent event) {
+        if (event != null) event.commit();
+    }
+
+    /**
+     * @return the call's event, or null if nothing is recording.
+     */
+    static CallEvent beginCall() {
+        if (!recording()) return null;
+        CallEvent event = new CallEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endCall(CallEvent event, LoxCallable function, Token paren) {
+        if (event == null) return;
+        event.end();
+        if (!event.shouldCommit()) return;
+
+        event.function = Profiler.name(function);
+        event.line = Profiler.line(function);
+        event.callLine = paren == null ? 0 : paren.line;
+        event.commit();
+    }
+
+    static void classDefined(LoxClass klass, Token name) {
+        if (!recording()) return;
+        ClassEvent event = new ClassEvent();
+        if (!event.shouldCommit()) return;
+
+        event.name = klass.name;
+        event.superclass = klass.superclass == null ? null : klass.superclass.name;
+        event.methods = klass.methods.size();
+        event.line = name.line;
+        event.commit();
+    }
+
+    static void runtimeError(RuntimeError error) {
+        if (!recording()) return;
+        RuntimeErrorEvent event = new RuntimeErrorEvent();
+        if (!event.shouldCommit()) return;
+
+        event.message = error.getMessage();
+        event.line = error.token == null ? 0 : error.token.line;
+        event.commit();
+    }
+}
@@ -0,0 +1,164 @@
+package ca.eddieantonio.lox;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * Enforces Limits during one run, across all of its tasks and workers.
+ *
+ * Checking a shared counter on every statement would be too slow, so each
+ * interpreter takes statements, calls, and allocations from the shared
+ * budgets in chunks, and counts down its chunk locally. The clock is only
+ * read when a new chunk of statements is taken.
+ *
+ * A run can also be cancelled, e.g., when nobody is waiting for its output
+ * anymore. It stops as if it had run out of time.
+ */
+class Governor {
+    static final Governor UNLIMITED = new Governor(new Limits(), new AtomicBoolean());
+
+    // How often waits that would never time out check whether the run was cancelled.
+    private static final long CANCEL_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Limits limits;
+    private final AtomicBoolean cancelled;
+    private final Budget statements;
+    private final Budget calls;
+    private final Budget allocations;
+    private final long deadline;
+    final int maxCallDepth;
+
+    /**
+     * @param cancelled set to stop the run.
+     */
+    Governor(Limits limits, AtomicBoolean cancelled) {
+        this.limits = limits;
+        this.cancelled = cancelled;
+        this.statements = new Budget(limits.maxStatements, "statements");
+        this.calls = new Budget(limits.maxCalls, "calls");
+        this.allocations = new Budget(limits.maxAllocations, "allocations");
+        this.deadline = limits.timeout == null ? 0 : System.nanoTime() + limits.timeout.toNanos();
+        this.maxCallDepth = limits.maxCallDepth;
+    }
+
+    /**
+     * @return how many more statements the caller may execute before asking again.
+     */
+    int takeStatements(int chunk) {
+        checkTime();
+        return statements.take(chunk);
+    }
+
+    /**
+     * Throws if the run is out of time or was cancelled.
+     */
+    void checkTime() {
+        if (cancelled.get()) {
+            throw new LimitExceeded("Cancelled");
+        }
+        if (limits.timeout != null && System.nanoTime() - deadline > 0) {
+            throw new LimitExceeded("Ran out of time: the limit is " + limits.timeout.toMillis() + " ms");
+        }
+    }
+
+    /**
+     * @return how long until the run is out of time; Long.MAX_VALUE if it never is.
+     */
+    long nanosLeft() {
+        if (limits.timeout == null) return Long.MAX_VALUE;
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Waits until the condition is signalled, or throws once the run is out
+     * of time or was cancelled. Like any await, it may also return early.
+     */
+    void await(Condition condition) {
+        checkTime();
+        try {
+            condition.awaitNanos(Math.min(nanosLeft(), CANCEL_POLL_NANOS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkTime();
+    }
+
+    /**
+     * Sleeps for that long, but not past the timeout, and not after the run is cancelled.
+     */
+    void sleep(long nanos) {
+        // Counting down, since the end of a sleep with no timeout would overflow.
+        long left = Math.min(nanos, nanosLeft());
+        while (left > 0 && !cancelled.get()) {
+            long started = System.nanoTime();
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(left, CANCEL_POLL_NANOS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            left -= System.nanoTime() - started;
+        }
+    }
+
+    int takeCalls(int chunk) {
+        return calls.take(chunk);
+    }
+
+    /**
+     * @return how many more allocations the caller may make, after the ones it owes.
+     */
+    int takeAllocations(long owed, int chunk) {
+        return allocations.take(owed, chunk);
+    }
+
+    void callTooDeep() {
+        throw new LimitExceeded("Calls nested too deeply: the limit is " + maxCallDepth);
+    }
+
+    private static class Budget {
+        private final long limit;
+        private final String what;
+        private final AtomicLong remaining;
+
+        Budget(long limit, String what) {
+            this.limit = limit;
+            this.what = what;
+            this.remaining = new AtomicLong(limit);
+        }
+
+        int take(int chunk) {
+            // Don't make parallel workers fight over a counter nobody is checking.
+            if (limit == Long.MAX_VALUE) return chunk;
+
+            for (;;) {
+                long left = remaining.get();
+                if (left <= 0) {
+                    throw new LimitExceeded("Too many " + what + ": the limit is " + limit);
+                }
+                int taken = (int) Math.min(chunk, left);
+                if (remaining.compareAndSet(left, left - taken)) return taken;
+            }
+        }
+
+        /**
+         * Takes what's owed, e.g., for one big array, and as much of a chunk on top as there is.
+         *
+         * @return how much is left over after what's owed.
+         */
+        int take(long owed, int chunk) {
+            if (limit == Long.MAX_VALUE) return chunk;
+
+            for (;;) {
+                long left = remaining.get();
+                if (left < owed) {
+                    throw new LimitExceeded("Too many " + what + ": the limit is " + limit);
+                }
+                long taken = Math.min(owed + chunk, left);
+                if (remaining.compareAndSet(left, left - taken)) return (int) (taken - owed);
+            }
+        }
+    }
+}
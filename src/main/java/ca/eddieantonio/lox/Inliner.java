@@ -0,0 +1,473 @@
+package ca.eddieantonio.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inlines calls to small global functions, and the values of constants (jlox -O).
+ *
+ * A function can be inlined if it's declared once, at the top level, and its
+ * body is just `return <expression>;`, where the expression only does
+ * arithmetic, comparisons, logic, and property gets on its parameters,
+ * literals, and globals. Such a function can't be recursive, and can't have
+ * side effects. e.g.,
+ *
+ *     fun square(x) { return x * x; }
+ *     fun getX(point) { return point.x; }
+ *
+ * A call is replaced by the function's expression, with the arguments in
+ * place of the parameters. Arguments are only substituted when reading them
+ * twice, or not at all, can't make a difference: when they're literals or
+ * local variables. The function's other variables are globals, so they mean
+ * the same thing at the call site. There are no locals to rename, and the
+ * Resolver's depths stay correct without resolving again.
+ *
+ * Calls are only inlined after the function's declaration, and never if the
+ * function's global is assigned or declared again anywhere in the program.
+ * This assumes that code from outside the program (e.g., a snapshot) doesn't
+ * reassign it either.
+ *
+ * A constant whose value is a literal, or folds to one, is replaced by that
+ * literal wherever it's read. The Resolver has already made sure constants
+ * are never assigned; a global constant is only replaced in statements after
+ * its declaration, since a function declared before it might read some other
+ * global of the same name.
+ */
+class Inliner implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // How big a function's expression can be, counting nodes.
+    private static final int MAXIMUM_SIZE = 16;
+
+    private record Candidate(Stmt.Function declaration, Expr body, int position) {}
+
+    private final Map<String, Candidate> candidates = new HashMap<>();
+    private final Set<String> reassigned = new HashSet<>();
+    // The literal value of each constant in each local scope, as in the Resolver; innermost last.
+    private final List<Map<String, Expr.Literal>> scopes = new ArrayList<>();
+    private final Map<String, Expr.Literal> globalConstants = new HashMap<>();
+    // Which top-level statement we're in.
+    private int position = 0;
+
+    /**
+     * @return the program with calls and constants inlined, or the same program if nothing changed.
+     */
+    static Program inline(Program program) {
+        List<Stmt> statements = new Inliner().inline(program.statements);
+        if (statements == program.statements) return program;
+        return new Program(statements);
+    }
+
+    private List<Stmt> inline(List<Stmt> program) {
+        // First find what could be inlined...
+        Map<String, Integer> declarations = new HashMap<>();
+        for (int i = 0; i < program.size(); i++) {
+            Stmt statement = program.get(i);
+            Token name = declaredName(statement);
+            if (name == null) continue;
+
+            declarations.merge(name.lexeme, 1, Integer::sum);
+            if (statement instanceof Stmt.Function function) {
+                Expr body = inlinableBody(function);
+                if (body != null) candidates.put(name.lexeme, new Candidate(function, body, i));
+            }
+        }
+
+        // ...then rule out any that might change. With no candidates, this pass only looks.
+        Map<String, Candidate> found = new HashMap<>(candidates);
+        candidates.clear();
+        rewrite(program);
+        for (Candidate candidate : found.values()) {
+            String name = candidate.declaration.name.lexeme;
+            if (declarations.get(name) == 1 && !reassigned.contains(name)) {
+                candidates.put(name, candidate);
+            }
+        }
+
+        globalConstants.clear();
+        return rewrite(program);
+    }
+
+    /**
+     * @return the rewritten program, or the same list if none of its statements changed.
+     */
+    private List<Stmt> rewrite(List<Stmt> program) {
+        List<Stmt> result = new ArrayList<>(program.size());
+        boolean changed = false;
+        for (position = 0; position < program.size(); position++) {
+            Stmt statement = program.get(position);
+            Stmt rewritten = rewrite(statement);
+            changed |= rewritten != statement;
+            result.add(rewritten);
+        }
+        return changed ? result : program;
+    }
+
+    private static Token declaredName(Stmt statement) {
+        if (statement instanceof Stmt.Function function) return function.name;
+        if (statement instanceof Stmt.Var var) return var.name;
+        if (statement instanceof Stmt.Class klass) return klass.name;
+        return null;
+    }
+
+    /**
+     * @return the expression the function returns, if the function can be inlined; else null.
+     */
+    private static Expr inlinableBody(Stmt.Function function) {
+        if (function.body.size() != 1) return null;
+        if (!(function.body.get(0) instanceof Stmt.Return ret) || ret.value == null) return null;
+        int size = size(ret.value);
+        return size > 0 && size <= MAXIMUM_SIZE ? ret.value : null;
+    }
+
+    /**
+     * @return how many nodes are in the expression, or 0 if it can't be inlined.
+     */
+    private static int size(Expr expr) {
+        if (expr instanceof Expr.Literal || expr instanceof Expr.Variable) return 1;
+        if (expr instanceof Expr.Grouping grouping) return sizeOf(1, grouping.expression);
+        if (expr instanceof Expr.Unary unary) return sizeOf(1, unary.right);
+        if (expr instanceof Expr.Get get) return sizeOf(1, get.object);
+        if (expr instanceof Expr.Binary binary) return sizeOf(sizeOf(1, binary.left), binary.right);
+        if (expr instanceof Expr.Logical logical) return sizeOf(sizeOf(1, logical.left), logical.right);
+        // Calls, assignments, etc. might have side effects.
+        return 0;
+    }
+
+    private static int sizeOf(int size, Expr expr) {
+        int more = size(expr);
+        return size == 0 || more == 0 ? 0 : size + more;
+    }
+
+    private Stmt rewrite(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    private Expr rewrite(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    /**
+     * @return the rewritten statements, or the same list if none of them changed.
+     */
+    private <S extends Stmt> List<S> rewriteAll(List<S> statements) {
+        List<S> result = null;
+        for (int i = 0; i < statements.size(); i++) {
+            S statement = statements.get(i);
+            @SuppressWarnings("unchecked")
+            S rewritten = (S) rewrite(statement);
+            if (rewritten != statement && result == null) {
+                result = new ArrayList<>(statements.subList(0, i));
+            }
+            if (result != null) result.add(rewritten);
+        }
+        return result == null ? statements : result;
+    }
+
+    private static boolean isGlobal(Expr expr) {
+        return expr.depth < 0;
+    }
+
+    private static <S extends Stmt> S sameLine(Stmt original, S copy) {
+        copy.line = original.line;
+        return copy;
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private void endScope() {
+        scopes.remove(scopes.size() - 1);
+    }
+
+    /**
+     * @return the constant's value, if the variable is a constant with a literal value; else null.
+     */
+    private Expr.Literal constant(Expr.Variable variable) {
+        if (isGlobal(variable)) return globalConstants.get(variable.name.lexeme);
+        return scopes.get(scopes.size() - 1 - variable.depth).get(variable.name.lexeme);
+    }
+
+    /**
+     * @return the value of an operation on literals, or null if it isn't known until runtime (e.g., an error).
+     */
+    private static Expr.Literal fold(Token operator, Object left, Object right) {
+        if (operator.type == TokenType.EQUAL_EQUAL) return new Expr.Literal(Interpreter.isEqual(left, right));
+        if (operator.type == TokenType.BANG_EQUAL) return new Expr.Literal(!Interpreter.isEqual(left, right));
+        if (operator.type == TokenType.PLUS && left instanceof String a && right instanceof String b) {
+            return new Expr.Literal(a + b);
+        }
+        if (!(left instanceof Double a) || !(right instanceof Double b)) return null;
+
+        switch (operator.type) {
+            case PLUS: return new Expr.Literal(a + b);
+            case MINUS: return new Expr.Literal(a - b);
+            case STAR: return new Expr.Literal(a * b);
+            case SLASH: return new Expr.Literal(a / b);
+            case GREATER: return new Expr.Literal(a > b);
+            case GREATER_EQUAL: return new Expr.Literal(a >= b);
+            case LESS: return new Expr.Literal(a < b);
+            case LESS_EQUAL: return new Expr.Literal(a <= b);
+            default: return null;
+        }
+    }
+
+    /**
+     * @return whether the argument always has the same value, and can't fail, no matter how often it's evaluated.
+     */
+    private boolean isSimple(Expr argument) {
+        return argument instanceof Expr.Literal || argument instanceof Expr.Variable && !isGlobal(argument);
+    }
+
+    /**
+     * @return the function's expression, with the arguments in place of the parameters.
+     */
+    private Expr substitute(Expr expr, Map<String, Expr> arguments) {
+        if (expr instanceof Expr.Variable variable) {
+            // The only locals in the function's expression are its parameters.
+            return isGlobal(variable) ? variable : arguments.get(variable.name.lexeme);
+        }
+        if (expr instanceof Expr.Grouping grouping) {
+            return new Expr.Grouping(substitute(grouping.expression, arguments));
+        }
+        if (expr instanceof Expr.Unary unary) {
+            return new Expr.Unary(unary.operator, substitute(unary.right, arguments));
+        }
+        if (expr instanceof Expr.Get get) {
+            return new Expr.Get(substitute(get.object, arguments), get.name);
+        }
+        if (expr instanceof Expr.Binary binary) {
+            return new Expr.Binary(substitute(binary.left, arguments), binary.operator,
+                    substitute(binary.right, arguments));
+        }
+        if (expr instanceof Expr.Logical logical) {
+            return new Expr.Logical(substitute(logical.left, arguments), logical.operator,
+                    substitute(logical.right, arguments));
+        }
+        return expr;
+    }
+
+    // Expressions:
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        if (isGlobal(expr)) reassigned.add(expr.name.lexeme);
+
+        Expr value = rewrite(expr.value);
+        if (value == expr.value) return expr;
+
+        Expr.Assign assign = new Expr.Assign(expr.name, value);
+        assign.depth = expr.depth;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = rewrite(expr.left);
+        Expr right = rewrite(expr.right);
+        if (left instanceof Expr.Literal a && right instanceof Expr.Literal b) {
+            Expr.Literal folded = fold(expr.operator, a.value, b.value);
+            if (folded != null) return folded;
+        }
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = rewrite(expr.callee);
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        boolean changed = callee != expr.callee;
+        boolean simple = true;
+        for (Expr argument : expr.arguments) {
+            Expr rewritten = rewrite(argument);
+            changed |= rewritten != argument;
+            simple &= isSimple(rewritten);
+            arguments.add(rewritten);
+        }
+
+        if (simple && callee instanceof Expr.Variable variable && isGlobal(variable)) {
+            Candidate candidate = candidates.get(variable.name.lexeme);
+            if (candidate != null && candidate.position < position
+                    && candidate.declaration.params.size() == arguments.size()) {
+                Map<String, Expr> substitutions = new HashMap<>();
+                for (int i = 0; i < arguments.size(); i++) {
+                    substitutions.put(candidate.declaration.params.get(i).lexeme, arguments.get(i));
+                }
+                // Its globals might be constants, too.
+                return rewrite(new Expr.Grouping(substitute(candidate.body, substitutions)));
+            }
+        }
+
+        if (!changed) return expr;
+        return new Expr.Call(callee, expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = rewrite(expr.object);
+        if (object == expr.object) return expr;
+        return new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = rewrite(expr.expression);
+        if (expression instanceof Expr.Literal) return expression;
+        if (expression == expr.expression) return expr;
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = rewrite(expr.left);
+        Expr right = rewrite(expr.right);
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = rewrite(expr.object);
+        Expr value = rewrite(expr.value);
+        if (object == expr.object && value == expr.value) return expr;
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = rewrite(expr.right);
+        if (right instanceof Expr.Literal literal) {
+            if (expr.operator.type == TokenType.BANG) return new Expr.Literal(!Interpreter.isTruthy(literal.value));
+            if (literal.value instanceof Double value) return new Expr.Literal(-value);
+        }
+        if (right == expr.right) return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        Expr.Literal value = constant(expr);
+        return value == null ? expr : value;
+    }
+
+    // Statements:
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        List<Stmt> statements = rewriteAll(stmt.statements);
+        endScope();
+        if (statements == stmt.statements) return stmt;
+        return sameLine(stmt, new Stmt.Block(statements));
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        // The scopes with 'super' and 'this'.
+        if (stmt.superclass != null) beginScope();
+        beginScope();
+        List<Stmt.Function> methods = rewriteAll(stmt.methods);
+        endScope();
+        if (stmt.superclass != null) endScope();
+        if (methods == stmt.methods) return stmt;
+        return sameLine(stmt, new Stmt.Class(stmt.name, stmt.superclass, methods));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = rewrite(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return sameLine(stmt, new Stmt.Expression(expression));
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        // The condition and increment are simple enough that they never have calls.
+        beginScope();
+        Stmt.Var counter = (Stmt.Var) rewrite(stmt.counter);
+        Expr.Binary condition = stmt.condition;
+        Expr bound = rewrite(condition.right);
+        if (bound != condition.right) condition = new Expr.Binary(condition.left, condition.operator, bound);
+        Stmt body = rewrite(stmt.body);
+        endScope();
+        if (counter == stmt.counter && condition == stmt.condition && body == stmt.body) return stmt;
+        // A bound that's now a literal can't change.
+        boolean invariant = stmt.invariant || bound instanceof Expr.Literal;
+        return sameLine(stmt, new Stmt.For(counter, condition, stmt.increment, body, invariant));
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        beginScope();
+        List<Stmt> body = rewriteAll(stmt.body);
+        endScope();
+        if (body == stmt.body) return stmt;
+        return sameLine(stmt, new Stmt.Function(stmt.name, stmt.params, body));
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = rewrite(stmt.condition);
+        Stmt thenBranch = rewrite(stmt.thenBranch);
+        Stmt elseBranch = rewrite(stmt.elseBranch);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return sameLine(stmt, new Stmt.If(condition, thenBranch, elseBranch));
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = rewrite(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return sameLine(stmt, new Stmt.Print(expression));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        Expr value = rewrite(stmt.value);
+        if (value == stmt.value) return stmt;
+        return sameLine(stmt, new Stmt.Return(stmt.keyword, value));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = rewrite(stmt.initializer);
+        if (stmt.constant && initializer instanceof Expr.Literal literal) {
+            if (scopes.isEmpty()) {
+                globalConstants.put(stmt.name.lexeme, literal);
+            } else {
+                scopes.get(scopes.size() - 1).put(stmt.name.lexeme, literal);
+            }
+        }
+        if (initializer == stmt.initializer) return stmt;
+        return sameLine(stmt, new Stmt.Var(stmt.name, initializer, stmt.constant));
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = rewrite(stmt.condition);
+        Stmt body = rewrite(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+        return sameLine(stmt, new Stmt.While(condition, body));
+    }
+}
@@ -1,50 +1,286 @@
 package ca.eddieantonio.lox;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    final Map<Expr, Integer> locals = new HashMap<>();
-
-    {
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+    private final ErrorReporter reporter;
+    final Output out;
+    final Environment globals;
+    private Environment environment;
+    final Map<String, NativeFunction> natives;
+    final Scheduler scheduler;
+    // Isolated interpreters run parallelMap() workers, and may only change what they made.
+    final boolean isolated;
+    // Set by the embedder; each run gets a new Governor for them, shared with its tasks.
+    Limits limits = null;
+    Governor governor = Governor.UNLIMITED;
+    // Set to stop every run from now on, in every task.
+    final AtomicBoolean cancelled;
+    // Counted down locally, and topped up from the governor's budgets.
+    private int untilCheckpoint = 0;
+    private int callsLeft = 0;
+    private int allocationsLeft = 0;
+    private int callDepth = 0;
+    // Set when running on the closure engine instead of walking the tree.
+    ClosureCompiler compiler = null;
+    // Set to dispatch on each node's kind with a switch, instead of with accept().
+    boolean switchDispatch = false;
+    // Set with --profile. Each task times its own calls.
+    Profiler.CallStack profile = null;
+    // Set with --sample. Each task keeps its own shadow stack.
+    Sampler.ShadowStack shadow = null;
+    // Set with --stats. Each task counts what it does on its own.
+    Stats.Counters counters = null;
+    // Set with --allocations. Each task counts what it allocates on its own.
+    Allocations.Counts allocations = null;
+    // Set with --coverage. Each task counts the nodes it runs on its own.
+    Coverage.Counts coverage = null;
+
+    Interpreter(ErrorReporter reporter, PrintStream out) {
+        this.reporter = reporter;
+        this.out = new Output(out);
+        this.globals = new Environment();
+        this.environment = globals;
+        this.natives = new HashMap<>();
+        this.scheduler = new Scheduler();
+        this.isolated = false;
+        this.cancelled = new AtomicBoolean();
+        Natives.define(this);
+    }
+
+    /**
+     * Creates an interpreter for another task. It shares everything except
+     * for its current environment.
+     */
+    private Interpreter(Interpreter parent, boolean isolated) {
+        this.reporter = parent.reporter;
+        this.out = parent.out;
+        this.globals = parent.globals;
+        this.environment = globals;
+        this.natives = parent.natives;
+        this.scheduler = parent.scheduler;
+        this.isolated = isolated;
+        this.governor = parent.governor;
+        this.cancelled = parent.cancelled;
+        this.callDepth = parent.callDepth;
+        this.compiler = parent.compiler;
+        this.switchDispatch = parent.switchDispatch;
+        this.profile = parent.profile == null ? null : parent.profile.fork();
+        this.shadow = parent.shadow == null ? null : parent.shadow.fork();
+        this.counters = parent.counters == null ? null : parent.counters.fork();
+        this.allocations = parent.allocations == null ? null : parent.allocations.fork();
+        this.coverage = parent.coverage == null ? null : parent.coverage.fork();
+    }
+
+    Interpreter fork() {
+        return new Interpreter(this, false);
+    }
+
+    /**
+     * Creates an interpreter for a parallel worker. It may read anything, but
+     * it may only change the environments, instances, and arrays it creates.
+     */
+    Interpreter isolatedFork() {
+        return new Interpreter(this, true);
+    }
+
+    /**
+     * @return who owns objects that this interpreter creates, for isolation checks.
+     */
+    Interpreter ownerOfNewObjects() {
+        return isolated ? this : null;
+    }
+
+    Environment newEnvironment(Environment enclosing) {
+        if (counters != null) counters.environments++;
+        noteAllocation(Allocations.Kind.ENVIRONMENT);
+        return new Environment(enclosing, ownerOfNewObjects());
+    }
+
+    /**
+     * @param size how many variables it will probably hold.
+     */
+    Environment newEnvironment(Environment enclosing, int size) {
+        if (counters != null) counters.environments++;
+        noteAllocation(Allocations.Kind.ENVIRONMENT);
+        return new Environment(enclosing, ownerOfNewObjects(), size);
+    }
+
+    /**
+     * Makes sure that an isolated interpreter only changes objects it made.
+     */
+    void checkCanModify(Interpreter owner, String what) {
+        if (isolated && owner != this) {
+            throw new RuntimeError("Can't change a shared " + what + " inside a parallel function");
+        }
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double) System.currentTimeMillis() / 1000.0;
-            }
+    void defineNative(NativeFunction function) {
+        natives.put(function.name, function);
+        globals.define(function.name, function);
+    }
 
-            @Override
-            public String toString() {
-                return "<native function 'clock'>";
+    void interpret(Program program) {
+        scheduler.enter();
+        try {
+            beginRun();
+            try {
+                if (compiler != null) {
+                    compiler.run(this, program.statements);
+                } else {
+                    for (Stmt statement : program.statements) {
+                        execute(statement);
+                    }
+                }
+            } catch (RuntimeError error)  {
+                runtimeError(error);
             }
-        });
+            // The program isn't done until all of its tasks are.
+            scheduler.awaitAll();
+        } finally {
+            out.flush();
+            scheduler.exit();
+            // Not on any line of the script anymore, as far as the sampler is concerned.
+            reached(0);
+        }
+    }
+
+    /**
+     * Reports the error, after anything printed before it.
+     */
+    void runtimeError(RuntimeError error) {
+        out.flush();
+        reporter.runtimeError(error);
+    }
+
+    /**
+     * Starts counting against the limits from scratch.
+     */
+    void beginRun() {
+        // Even without limits, a run can be cancelled; that mustn't cancel every other run.
+        governor = new Governor(limits == null ? new Limits() : limits, cancelled);
+        untilCheckpoint = 0;
+        callsLeft = 0;
+        allocationsLeft = 0;
     }
 
-    void interpret(List<Stmt> statements) {
+    /**
+     * Runs the body of a spawned task. The scheduler has already given us the interpreter lock.
+     */
+    void runTask(LoxCallable function) {
         try {
-            for (Stmt statement : statements) {
-                execute(statement);
-            }
-        } catch (RuntimeError error)  {
-            Lox.runtimeError(error);
+            function.call(this, Natives.noArguments());
+        } catch (RuntimeError error) {
+            runtimeError(error);
         }
     }
 
     private void execute(Stmt statement) {
-        statement.accept(this);
+        tick();
+        reached(statement.line);
+        if (coverage != null) {
+            long[] counts = coverage.enter(statement);
+            long started = System.nanoTime();
+            try {
+                visit(statement);
+            } finally {
+                coverage.exit(counts, started);
+            }
+        } else {
+            visit(statement);
+        }
     }
 
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    private void visit(Stmt statement) {
+        if (switchDispatch) {
+            dispatch(statement);
+        } else {
+            statement.accept(this);
+        }
+    }
+
+    private void dispatch(Stmt stmt) {
+        switch (stmt.kind) {
+            case BLOCK: visitBlockStmt((Stmt.Block) stmt); break;
+            case CLASS: visitClassStmt((Stmt.Class) stmt); break;
+            case EXPRESSION: visitExpressionStmt((Stmt.Expression) stmt); break;
+            case FOR: visitForStmt((Stmt.For) stmt); break;
+            case FUNCTION: visitFunctionStmt((Stmt.Function) stmt); break;
+            case IF: visitIfStmt((Stmt.If) stmt); break;
+            case PRINT: visitPrintStmt((Stmt.Print) stmt); break;
+            case RETURN: visitReturnStmt((Stmt.Return) stmt); break;
+            case VAR: visitVarStmt((Stmt.Var) stmt); break;
+            case WHILE: visitWhileStmt((Stmt.While) stmt); break;
+        }
+    }
+
+    /**
+     * Counts one statement.
+     */
+    void tick() {
+        if (counters != null) counters.statementsExecuted++;
+        if (--untilCheckpoint < 0) checkpoint();
+    }
+
+    /**
+     * Every so often: check the limits, and let other tasks have a turn.
+     */
+    private void checkpoint() {
+        untilCheckpoint = governor.takeStatements(Scheduler.YIELD_INTERVAL) - 1;
+        if (scheduler.isConcurrent()) scheduler.yieldTurn();
+    }
+
+    /**
+     * Notes which line is running, for the sampler and --allocations.
+     */
+    void reached(int line) {
+        if (shadow != null) shadow.reached(line);
+        if (allocations != null) allocations.line = line;
+    }
+
+    /**
+     * Counts an object for --allocations, against the line that's running.
+     */
+    void noteAllocation(Allocations.Kind kind) {
+        if (allocations != null) allocations.count(kind);
+    }
+
+    /**
+     * Counts an object against the allocation limit.
+     */
+    void allocated() {
+        if (--allocationsLeft < 0) {
+            allocationsLeft = governor.takeAllocations(-allocationsLeft, Scheduler.YIELD_INTERVAL);
+        }
+    }
+
+    /**
+     * Counts something as big as size objects against the allocation limit,
+     * e.g., an array, by its length. Call it before making it.
+     */
+    void allocated(long size) {
+        long left = allocationsLeft - size;
+        allocationsLeft = left < 0 ? governor.takeAllocations(-left, Scheduler.YIELD_INTERVAL) : (int) left;
+    }
+
+    /**
+     * @return a + b, counted against the allocation limit by its length.
+     */
+    String concatenate(Token operator, String a, String b) {
+        long length = (long) a.length() + b.length();
+        allocated(length);
+        noteAllocation(Allocations.Kind.STRING);
+        try {
+            return a.concat(b);
+        } catch (OutOfMemoryError e) {
+            // Only this one string didn't fit (or was longer than Java allows), so it's safe to carry on.
+            throw new RuntimeError(operator, "Not enough memory for a string of length " + length);
+        }
     }
 
     void executeBlock(List<Stmt> statements, Environment environment) {
@@ -61,12 +297,44 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
     }
 
     private Object evaluate(Expr expr) {
+        if (coverage != null) {
+            long[] counts = coverage.enter(expr);
+            long started = System.nanoTime();
+            try {
+                return visit(expr);
+            } finally {
+                coverage.exit(counts, started);
+            }
+        }
+        return visit(expr);
+    }
+
+    private Object visit(Expr expr) {
+        if (switchDispatch) return dispatch(expr);
         return expr.accept(this);
     }
 
+    private Object dispatch(Expr expr) {
+        switch (expr.kind) {
+            case ASSIGN: return visitAssignExpr((Expr.Assign) expr);
+            case BINARY: return visitBinaryExpr((Expr.Binary) expr);
+            case CALL: return visitCallExpr((Expr.Call) expr);
+            case GET: return visitGetExpr((Expr.Get) expr);
+            case GROUPING: return visitGroupingExpr((Expr.Grouping) expr);
+            case LITERAL: return visitLiteralExpr((Expr.Literal) expr);
+            case LOGICAL: return visitLogicalExpr((Expr.Logical) expr);
+            case SET: return visitSetExpr((Expr.Set) expr);
+            case SUPER: return visitSuperExpr((Expr.Super) expr);
+            case THIS: return visitThisExpr((Expr.This) expr);
+            case UNARY: return visitUnaryExpr((Expr.Unary) expr);
+            case VARIABLE: return visitVariableExpr((Expr.Variable) expr);
+        }
+        throw new AssertionError("Unknown expression: " + expr.kind);
+    }
+
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        executeBlock(stmt.statements, newEnvironment(environment));
         return null;
     }
 
@@ -85,7 +353,7 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
 
         // Create environment that keeps a reference to the actual superclass.
         if (stmt.superclass != null) {
-            environment = new Environment(environment);
+            environment = newEnvironment(environment);
             environment.define("super", superclass);
         }
 
@@ -97,6 +365,8 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
         }
 
         LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
+        allocated();
+        Events.classDefined(klass, stmt.name);
 
         // Pop the environment holding "super"
         if (superclass != null) {
@@ -116,6 +386,7 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
+        allocated();
         LoxFunction function = new LoxFunction(stmt, environment, false);
         environment.define(stmt.name.lexeme, function);
         return null;
@@ -138,6 +409,13 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
             value = evaluate(stmt.initializer);
         }
 
+        if (environment == globals) {
+            globals.checkNotConstant(stmt.name);
+            if (stmt.constant) {
+                globals.defineConstant(stmt.name.lexeme, value);
+                return null;
+            }
+        }
         environment.define(stmt.name.lexeme, value);
         return null;
     }
@@ -145,7 +423,11 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        if (value instanceof Double number) {
+            out.println((double) number);
+        } else {
+            out.println(stringify(value));
+        }
         return null;
     }
 
@@ -165,12 +447,72 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        Environment previous = this.environment;
+        try {
+            this.environment = newEnvironment(previous);
+            String name = stmt.counter.name.lexeme;
+            Object start = evaluate(stmt.counter.initializer);
+            environment.define(name, start);
+
+            Token operator = stmt.condition.operator;
+            Object bound = evaluate(stmt.condition.right);
+            checkNumberOperands(operator, start, bound);
+
+            // The body never assigns to the counter, so we keep it here, and only copy it out for the body.
+            double counter = (double) start;
+            double limit = (double) bound;
+            double step = step(stmt);
+            while (compare(operator.type, counter, limit)) {
+                execute(stmt.body);
+                tick();
+                counter += step;
+                environment.values.put(0, name, counter);
+                if (allocations != null) allocations.count(Allocations.Kind.NUMBER, stmt.line);
+
+                // Another task might change the bound between any two statements.
+                if (!stmt.invariant || scheduler.isConcurrent()) {
+                    bound = evaluate(stmt.condition.right);
+                    checkNumberOperands(operator, counter, bound);
+                    limit = (double) bound;
+                }
+            }
+        } finally {
+            this.environment = previous;
+        }
+        return null;
+    }
+
+    /**
+     * @return how much a counted loop adds to its counter each time around.
+     */
+    static double step(Stmt.For stmt) {
+        Expr.Binary sum = (Expr.Binary) stmt.increment.value;
+        double step = (double) ((Expr.Literal) sum.right).value;
+        return sum.operator.type == TokenType.MINUS ? -step : step;
+    }
+
+    static boolean compare(TokenType operator, double left, double right) {
+        switch (operator) {
+            case LESS: return left < right;
+            case LESS_EQUAL: return left <= right;
+            case GREATER: return left > right;
+            case GREATER_EQUAL: return left >= right;
+        }
+        throw new AssertionError("Not a comparison: " + operator);
+    }
+
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if (distance != null) {
+        int distance = expr.depth;
+        if (isolated) {
+            checkCanAssign(distance >= 0 ? environment.ancestor(distance) : globals, expr.name);
+        }
+
+        if (distance >= 0) {
             environment.assignAt(distance, expr.name, value);
         } else {
             // Assign to a global variable
@@ -204,14 +546,16 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
                 return isEqual(left, right);
             case MINUS:
                 checkNumberOperands(expr.operator, left, right);
+                noteAllocation(Allocations.Kind.NUMBER);
                 return (double) left - (double) right;
             case PLUS:
                 if (left instanceof Double && right instanceof Double) {
+                    noteAllocation(Allocations.Kind.NUMBER);
                     return (double) left + (double) right;
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return left + (String) right;
+                if (left instanceof String a && right instanceof String b) {
+                    return concatenate(expr.operator, a, b);
                 }
 
                 throw new RuntimeError(expr.operator,
@@ -219,9 +563,11 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
 
             case SLASH:
                 checkNumberOperands(expr.operator, left, right);
+                noteAllocation(Allocations.Kind.NUMBER);
                 return (double) left / (double) right;
             case STAR:
                 checkNumberOperands(expr.operator, left, right);
+                noteAllocation(Allocations.Kind.NUMBER);
                 return (double) left * (double) right;
         }
 
@@ -230,9 +576,28 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
+        Object callee;
+        if (expr.callee instanceof Expr.Get get) {
+            // Call methods without binding them first. That skips evaluating the get, but it did run.
+            if (coverage != null) coverage.hit(get);
+            Object object = evaluate(get.object);
+            LoxFunction method = object instanceof LoxInstance instance ? instance.findMethod(get.name.lexeme) : null;
+            if (method != null) {
+                List<Object> arguments = new ArrayList<>();
+                noteAllocation(Allocations.Kind.ARGUMENTS);
+                for (Expr arg : expr.arguments) {
+                    arguments.add(evaluate(arg));
+                }
+                checkArity(method, arguments.size(), expr.paren);
+                return call(method, (LoxInstance) object, arguments, expr.paren);
+            }
+            callee = getProperty(object, get.name);
+        } else {
+            callee = evaluate(expr.callee);
+        }
 
         List<Object> arguments = new ArrayList<>();
+        noteAllocation(Allocations.Kind.ARGUMENTS);
         for (Expr arg : expr.arguments) {
             arguments.add(evaluate(arg));
         }
@@ -244,28 +609,88 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
         }
 
         LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
+        checkArity(function, arguments.size(), expr.paren);
+
+        return call(function, arguments, expr.paren);
+    }
+
+    static void checkArity(LoxCallable function, int arguments, Token paren) {
+        if (arguments != function.arity()) {
             // TODO[error]: better error message
             // this is the definition vs. declaration mismatch! Must indicate both areas for user-defined functions.
-            throw new RuntimeError(expr.paren,
+            throw new RuntimeError(paren,
                     "Tried calling a function with "
-                    + arguments.size()
+                    + arguments
                     + " arguments, but the function says it wants exactly "
                     + function.arity()
                     + " arguments");
         }
+    }
+
+    /**
+     * Calls a function whose arity has already been checked.
+     */
+    Object call(LoxCallable function, List<Object> arguments, Token paren) {
+        return call(function, null, arguments, paren);
+    }
 
-        return function.call(this, arguments);
+    /**
+     * Calls the function; or, if there's a receiver, calls the method on it.
+     */
+    Object call(LoxCallable function, LoxInstance receiver, List<Object> arguments, Token paren) {
+        if (--callsLeft < 0) {
+            callsLeft = governor.takeCalls(Scheduler.YIELD_INTERVAL) - 1;
+        }
+        if (callDepth >= governor.maxCallDepth) governor.callTooDeep();
+
+        callDepth++;
+        // Back on the caller's line afterwards, for anything the rest of its statement allocates.
+        int line = allocations == null ? 0 : allocations.line;
+        if (counters != null) counters.called(callDepth);
+        Events.CallEvent event = Events.beginCall();
+        if (profile != null) profile.enter(function);
+        if (shadow != null) shadow.enter(function);
+        try {
+            if (receiver != null) return ((LoxFunction) function).callOn(this, receiver, arguments);
+            return function.call(this, arguments);
+        } catch (RuntimeError error) {
+            // Natives don't know where they were called from, so tell them.
+            if (error.token == null && !(error instanceof LimitExceeded)) {
+                throw new RuntimeError(paren, error.getMessage());
+            }
+            throw error;
+        } finally {
+            callDepth--;
+            if (allocations != null) allocations.line = line;
+            if (profile != null) profile.exit();
+            if (shadow != null) shadow.exit();
+            Events.endCall(event, function, paren);
+        }
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
+        Object value = getProperty(object, expr.name);
+        if (allocations != null && object instanceof LoxInstance instance
+                && instance.findMethod(expr.name.lexeme) != null) {
+            allocations.count(Allocations.Kind.BOUND_METHOD);
+        }
+        return value;
+    }
+
+    static Object getProperty(Object object, Token name) {
         if (object instanceof LoxInstance instance) {
-            return instance.get(expr.name);
+            return instance.get(name);
+        }
+        if (object instanceof LoxArray array) {
+            return array.get(name);
+        }
+        if (object instanceof MemoizedFunction memoized) {
+            return memoized.get(name);
         }
 
-        throw new RuntimeError(expr.name, "Only instances have properties");
+        throw new RuntimeError(name, "Only instances have properties");
     }
 
     @Override
@@ -300,13 +725,34 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
         }
 
         Object value = evaluate(expr.value);
+        checkCanSet(instance, expr.name);
         instance.set(expr.name, value);
         return value;
     }
 
+    /**
+     * Parallel functions may only assign to variables in their own environments.
+     */
+    void checkCanAssign(Environment target, Token name) {
+        if (isolated && target.owner != this) {
+            throw new RuntimeError(name,
+                    "Can't assign to '" + name.lexeme + "' inside a parallel function, because it is shared");
+        }
+    }
+
+    /**
+     * Parallel functions may only set fields on their own instances.
+     */
+    void checkCanSet(LoxInstance instance, Token name) {
+        if (isolated && instance.owner != this) {
+            throw new RuntimeError(name,
+                    "Can't set '" + name.lexeme + "' inside a parallel function, because the instance is shared");
+        }
+    }
+
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
+        int distance = expr.depth;
         LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
 
         // `this` is ALWAYS 1 level up in the environment chain.
@@ -320,6 +766,7 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
             throw new RuntimeError(expr.method, "Undefined method '" + expr.method.lexeme + "'.");
         }
 
+        noteAllocation(Allocations.Kind.BOUND_METHOD);
         return method.bind(object);
     }
 
@@ -337,6 +784,7 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
                 return !isTruthy(right);
             case MINUS:
                 checkNumberOperand(expr.operator, right);
+                noteAllocation(Allocations.Kind.NUMBER);
                 return -(double) right;
         }
 
@@ -349,39 +797,39 @@ public class Interpreter implements Expr.Visitor<Object>,Stmt.Visitor<Void> {
     }
 
     private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
+        int distance = expr.depth;
+        if (distance >= 0) {
             return environment.getAt(distance, name.lexeme);
         } else {
             return globals.get(name);
         }
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
 
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
 
         return a.equals(b);
     }
 
-    private void checkNumberOperand(Token operator, Object value) {
+    static void checkNumberOperand(Token operator, Object value) {
         if (value instanceof Double) return;
         throw new RuntimeError(operator, "Operand must be a number");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
+    static void checkNumberOperands(Token operator, Object left, Object right) {
         if (left instanceof Double && right instanceof Double) return;
         throw new RuntimeError(operator, "Operands must be a number");
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
         // Special-case doubles to pretend they're ints 🤪
@@ -0,0 +1,235 @@
+package ca.eddieantonio.lox;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Converts values between Java and Lox, for the ScriptEngine.
+ *
+ * Numbers become Lox numbers, CharSequences become strings, and functional
+ * interfaces become callables. Any other Java object becomes a JavaInstance,
+ * whose public methods and fields can be used from Lox like an instance's.
+ */
+class JavaInterop {
+    static Object toLox(Object value) {
+        if (value == null) return null;
+        if (value instanceof Boolean || value instanceof String) return value;
+        if (value instanceof Number number) return number.doubleValue();
+        if (value instanceof CharSequence || value instanceof Character) return value.toString();
+
+        // Already a Lox value:
+        if (value instanceof LoxCallable || value instanceof LoxInstance
+                || value instanceof LoxArray || value instanceof LoxChannel) {
+            return value;
+        }
+
+        if (value instanceof Supplier<?> supplier) {
+            return new NativeFunction("supplier", 0) {
+                @Override
+                public Object call(Interpreter interpreter, List<Object> arguments) {
+                    return toLox(supplier.get());
+                }
+            };
+        }
+        if (value instanceof Function<?, ?> function) {
+            @SuppressWarnings("unchecked")
+            Function<Object, ?> f = (Function<Object, ?>) function;
+            return new NativeFunction("function", 1) {
+                @Override
+                public Object call(Interpreter interpreter, List<Object> arguments) {
+                    return toLox(f.apply(toJava(arguments.get(0))));
+                }
+            };
+        }
+        if (value instanceof BiFunction<?, ?, ?> function) {
+            @SuppressWarnings("unchecked")
+            BiFunction<Object, Object, ?> f = (BiFunction<Object, Object, ?>) function;
+            return new NativeFunction("function", 2) {
+                @Override
+                public Object call(Interpreter interpreter, List<Object> arguments) {
+                    return toLox(f.apply(toJava(arguments.get(0)), toJava(arguments.get(1))));
+                }
+            };
+        }
+        if (value instanceof Runnable runnable) {
+            return new NativeFunction("runnable", 0) {
+                @Override
+                public Object call(Interpreter interpreter, List<Object> arguments) {
+                    runnable.run();
+                    return null;
+                }
+            };
+        }
+
+        return new JavaInstance(value);
+    }
+
+    static Object toJava(Object value) {
+        if (value instanceof JavaInstance instance) return instance.target;
+        return value;
+    }
+
+    static List<Object> toLox(Object[] values) {
+        List<Object> converted = new ArrayList<>();
+        if (values == null) return converted;
+        for (Object value : values) converted.add(toLox(value));
+        return converted;
+    }
+
+    /**
+     * Converts a Lox value so that it can be passed as the given Java type.
+     *
+     * @throws IllegalArgumentException if it can't be.
+     */
+    static Object coerce(Object value, Class<?> type) {
+        value = toJava(value);
+        if (type == void.class || type == Void.class) return null;
+        if (value instanceof Double number) {
+            if (type == double.class || type == Double.class) return number;
+            if (type == int.class || type == Integer.class) return number.intValue();
+            if (type == long.class || type == Long.class) return number.longValue();
+            if (type == float.class || type == Float.class) return number.floatValue();
+            if (type == short.class || type == Short.class) return number.shortValue();
+            if (type == byte.class || type == Byte.class) return number.byteValue();
+        }
+        if (value instanceof Boolean && type == boolean.class) return value;
+        if (value instanceof String string && (type == char.class || type == Character.class)
+                && string.length() == 1) {
+            return string.charAt(0);
+        }
+        if (value == null && !type.isPrimitive()) return null;
+        if (value != null && type.isInstance(value)) return value;
+
+        throw new IllegalArgumentException("Can't pass " + value + " as a " + type.getSimpleName());
+    }
+
+    /**
+     * A Java object, as seen from Lox.
+     */
+    static class JavaInstance extends LoxInstance {
+        final Object target;
+
+        JavaInstance(Object target) {
+            super(new LoxClass(target.getClass().getSimpleName(), null, Map.of()));
+            this.target = target;
+        }
+
+        @Override
+        Object get(Token name) {
+            List<Method> methods = new ArrayList<>();
+            for (Method method : target.getClass().getMethods()) {
+                if (method.getName().equals(name.lexeme) && !Modifier.isStatic(method.getModifiers())) {
+                    methods.add(publicVersion(method));
+                }
+            }
+            if (!methods.isEmpty()) return new JavaMethod(target, name.lexeme, methods);
+
+            Field field = field(name);
+            try {
+                return toLox(field.get(target));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeError(name, "Can't read Java field '" + name.lexeme + "'");
+            }
+        }
+
+        @Override
+        void set(Token name, Object value) {
+            Field field = field(name);
+            try {
+                field.set(target, coerce(value, field.getType()));
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                throw new RuntimeError(name, "Can't set Java field '" + name.lexeme + "': " + e.getMessage());
+            }
+        }
+
+        private Field field(Token name) {
+            try {
+                return target.getClass().getField(name.lexeme);
+            } catch (NoSuchFieldException e) {
+                throw new RuntimeError(name, "Undefined property: '" + name.lexeme + "'");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return target.toString();
+        }
+    }
+
+    /**
+     * A Java method, bound to its receiver. Overloads are chosen when called,
+     * but they must all take the same number of arguments.
+     */
+    private static class JavaMethod extends NativeFunction {
+        private final Object receiver;
+        private final List<Method> overloads;
+
+        JavaMethod(Object receiver, String name, List<Method> overloads) {
+            super(name, overloads.get(0).getParameterCount());
+            this.receiver = receiver;
+            this.overloads = overloads;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            for (Method method : overloads) {
+                if (method.getParameterCount() != arguments.size()) continue;
+
+                Object[] converted = new Object[arguments.size()];
+                try {
+                    Class<?>[] types = method.getParameterTypes();
+                    for (int i = 0; i < converted.length; i++) {
+                        converted[i] = coerce(arguments.get(i), types[i]);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Try the next overload.
+                    continue;
+                }
+
+                try {
+                    return toLox(method.invoke(receiver, converted));
+                } catch (InvocationTargetException e) {
+                    throw new RuntimeError("Java method '" + name + "' failed: " + e.getCause());
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeError("Can't call Java method '" + name + "'");
+                }
+            }
+
+            throw new RuntimeError("No Java method '" + name + "' takes these arguments");
+        }
+    }
+
+    /**
+     * Public methods of private classes (e.g., List.of()'s) can only be
+     * called through a public class or interface that declares them.
+     */
+    private static Method publicVersion(Method method) {
+        if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) return method;
+
+        Deque<Class<?>> types = new ArrayDeque<>();
+        types.add(method.getDeclaringClass());
+        while (!types.isEmpty()) {
+            Class<?> type = types.remove();
+            if (Modifier.isPublic(type.getModifiers())) {
+                try {
+                    return type.getMethod(method.getName(), method.getParameterTypes());
+                } catch (NoSuchMethodException e) {
+                    // Keep looking.
+                }
+            }
+            if (type.getSuperclass() != null) types.add(type.getSuperclass());
+            types.addAll(List.of(type.getInterfaces()));
+        }
+        return method;
+    }
+}
@@ -0,0 +1,10 @@
+package ca.eddieantonio.lox;
+
+/**
+ * Thrown when a run goes over one of its Limits.
+ */
+public class LimitExceeded extends RuntimeError {
+    LimitExceeded(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,73 @@
+package ca.eddieantonio.lox;
+
+import java.time.Duration;
+
+/**
+ * Caps on how much a single run of a program may do, for running code
+ * you don't trust. Everything is unlimited unless set.
+ *
+ * A run that goes over a limit stops with a runtime error, and jlox exits
+ * with its own exit status. The timeout also stops tasks waiting on a
+ * channel, and sleep() never sleeps past it.
+ *
+ * <pre>
+ *     runtime.setLimits(new Limits().maxStatements(1_000_000).timeout(Duration.ofSeconds(1)));
+ * </pre>
+ */
+public class Limits {
+    long maxStatements = Long.MAX_VALUE;
+    long maxCalls = Long.MAX_VALUE;
+    long maxAllocations = Long.MAX_VALUE;
+    int maxCallDepth = Integer.MAX_VALUE;
+    Duration timeout = null;
+
+    /**
+     * @param n how many statements a run may execute.
+     */
+    public Limits maxStatements(long n) {
+        maxStatements = positive(n);
+        return this;
+    }
+
+    /**
+     * @param n how many functions, methods, and classes a run may call.
+     */
+    public Limits maxCalls(long n) {
+        maxCalls = positive(n);
+        return this;
+    }
+
+    /**
+     * @param n how many instances, arrays, channels, classes, and closures a run may create.
+     * An array counts as one more for each element, and joining strings
+     * counts one for each character of the result. This is the limit on how
+     * much memory a run can take; everything else it keeps grows by at most
+     * a little per statement.
+     */
+    public Limits maxAllocations(long n) {
+        maxAllocations = positive(n);
+        return this;
+    }
+
+    /**
+     * @param n how deeply calls may nest.
+     */
+    public Limits maxCallDepth(int n) {
+        maxCallDepth = (int) positive(n);
+        return this;
+    }
+
+    /**
+     * @param timeout how long a run may take, from when it starts.
+     */
+    public Limits timeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) throw new IllegalArgumentException("timeout must be positive");
+        this.timeout = timeout;
+        return this;
+    }
+
+    private static long positive(long n) {
+        if (n <= 0) throw new IllegalArgumentException("limit must be positive");
+        return n;
+    }
+}
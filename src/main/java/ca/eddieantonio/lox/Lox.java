@@ -3,109 +3,345 @@ package ca.eddieantonio.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    private static final int EXIT_USAGE = 64;
-    private static final int EXIT_ERROR = 65;
-    private static final int EXIT_RUNTIME_ERROR = 70;
+    private static final LoxRuntime runtime = new LoxRuntime();
+    static final int EXIT_USAGE = 64;
+    static final int EXIT_ERROR = 65;
+    static final int EXIT_NO_INPUT = 66;
+    static final int EXIT_CANT_CREATE = 73;
+    static final int EXIT_RUNTIME_ERROR = 70;
+    static final int EXIT_LIMIT_EXCEEDED = 75;
 
-    private static boolean hadError = false;
-    private static boolean hadRuntimeError = false;
+    private static ProgramCache cache = null;
+    private static StartupReport startupReport = null;
+    private static Path loadSnapshot = null;
+    private static Path saveSnapshot = null;
+    private static String batch = null;
+    private static int jobs = Runtime.getRuntime().availableProcessors();
+    private static boolean daemon = false;
+    private static Limits limits = null;
+    private static Engine engine = Engine.TREE;
+    private static boolean optimize = false;
+    private static Profiler profiler = null;
+    private static boolean printProfile = false;
+    private static Path profileStacks = null;
+    private static int sampleRate = 1000;
+    private static boolean printSamples = false;
+    private static Path sampleStacks = null;
+    private static Stats stats = null;
+    private static boolean statsAsJson = false;
+    private static Allocations allocations = null;
+    private static Coverage coverage = null;
+    private static boolean coverageByLine = false;
+    private static String scriptSource = null;
+    private static Path socket = Daemon.defaultSocket();
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.err.println("Usage: jlox [script]");
-            System.exit(EXIT_USAGE);
-        }  else if (args.length == 1) {
-            runFile(args[0]);
+        long mainEntered = System.nanoTime();
+
+        String script = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--cache-dir") && i + 1 < args.length) {
+                cache = new ProgramCache(Paths.get(args[++i]));
+            } else if (arg.equals("--load-snapshot") && i + 1 < args.length) {
+                loadSnapshot = Paths.get(args[++i]);
+            } else if (arg.equals("--save-snapshot") && i + 1 < args.length) {
+                saveSnapshot = Paths.get(args[++i]);
+            } else if (arg.equals("--batch") && i + 1 < args.length) {
+                batch = args[++i];
+            } else if (arg.equals("--jobs") && i + 1 < args.length) {
+                jobs = (int) positive(args[++i], Integer.MAX_VALUE);
+            } else if (arg.equals("--max-statements") && i + 1 < args.length) {
+                limits().maxStatements(positive(args[++i]));
+            } else if (arg.equals("--max-calls") && i + 1 < args.length) {
+                limits().maxCalls(positive(args[++i]));
+            } else if (arg.equals("--max-allocations") && i + 1 < args.length) {
+                limits().maxAllocations(positive(args[++i]));
+            } else if (arg.equals("--max-depth") && i + 1 < args.length) {
+                limits().maxCallDepth((int) positive(args[++i], Integer.MAX_VALUE));
+            } else if (arg.equals("--timeout") && i + 1 < args.length) {
+                limits().timeout(Duration.ofMillis(positive(args[++i])));
+            } else if (arg.equals("--engine") && i + 1 < args.length) {
+                engine = parseEngine(args[++i]);
+            } else if (arg.equals("-O")) {
+                optimize = true;
+            } else if (arg.equals("--daemon")) {
+                daemon = true;
+            } else if (arg.equals("--socket") && i + 1 < args.length) {
+                socket = Paths.get(args[++i]);
+            } else if (arg.equals("--profile")) {
+                profiler = profiler();
+                printProfile = true;
+            } else if (arg.equals("--profile-stacks") && i + 1 < args.length) {
+                profiler = profiler();
+                profileStacks = Paths.get(args[++i]);
+            } else if (arg.equals("--sample")) {
+                printSamples = true;
+            } else if (arg.equals("--sample-stacks") && i + 1 < args.length) {
+                sampleStacks = Paths.get(args[++i]);
+            } else if (arg.equals("--sample-rate") && i + 1 < args.length) {
+                sampleRate = (int) positive(args[++i], Sampler.MAXIMUM_RATE);
+            } else if (arg.equals("--stats")) {
+                stats = new Stats();
+            } else if (arg.equals("--stats-json")) {
+                stats = new Stats();
+                statsAsJson = true;
+            } else if (arg.equals("--allocations")) {
+                allocations = new Allocations();
+            } else if (arg.equals("--coverage") && i + 1 < args.length) {
+                coverage = new Coverage();
+                coverageByLine = parseCoverageFormat(args[++i]);
+            } else if (arg.equals("--startup-report")) {
+                startupReport = new StartupReport(mainEntered);
+            } else if (arg.startsWith("--") || script != null) {
+                usage();
+            } else {
+                script = arg;
+            }
+        }
+
+        if (daemon) {
+            if (script != null || batch != null || saveSnapshot != null) usage();
+            try {
+                new Daemon(socket).serve();
+            } catch (IOException e) {
+                System.err.println("Can't start the daemon: " + e.getMessage());
+                System.exit(EXIT_CANT_CREATE);
+            }
+            return;
+        }
+
+        if (batch != null) {
+            if (script != null || saveSnapshot != null) usage();
+            List<Path> scripts;
+            try {
+                scripts = Batch.scripts(batch);
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Can't read " + batch);
+                System.exit(EXIT_NO_INPUT);
+                return;
+            }
+            System.exit(new Batch(jobs).run(scripts));
+        }
+
+        // The closure engine runs compiled code, which has no nodes left to count.
+        if (coverage != null && (engine == Engine.CLOSURE || coverageByLine && script == null)) usage();
+
+        try {
+            configure(runtime);
+        } catch (IOException e) {
+            System.err.println("Can't read " + e.getMessage());
+            System.exit(EXIT_NO_INPUT);
+        }
+        runtime.setProfiler(profiler);
+        Sampler sampler = printSamples || sampleStacks != null ? new Sampler(sampleRate) : null;
+        runtime.setSampler(sampler);
+        runtime.setStats(stats);
+        runtime.setAllocations(allocations);
+        runtime.setCoverage(coverage);
+
+        if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
-    }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, StandardCharsets.UTF_8));
+        boolean saved = true;
+        if (saveSnapshot != null && !runtime.hadError() && !runtime.hadRuntimeError()) {
+            try {
+                Snapshot.save(runtime.interpreter, saveSnapshot);
+            } catch (IOException e) {
+                // Still print the reports; they're about the run, which went fine.
+                System.err.println("Can't save snapshot: " + e.getMessage());
+                saved = false;
+            }
+        }
+
+        if (startupReport != null) {
+            startupReport.print(System.err);
+        }
 
-        if (hadError) {
-            System.exit(EXIT_ERROR);
+        if (printProfile) profiler.print(System.err);
+        if (profileStacks != null) profiler.writeCollapsedStacks(profileStacks);
+        if (sampler != null) {
+            sampler.stop();
+            if (printSamples) sampler.print(System.err);
+            if (sampleStacks != null) sampler.writeCollapsedStacks(sampleStacks);
         }
-        if (hadRuntimeError) {
-            System.exit(EXIT_RUNTIME_ERROR);
+        if (stats != null) {
+            if (statsAsJson) {
+                stats.printJson(System.err);
+            } else {
+                stats.print(System.err);
+            }
         }
+        if (allocations != null) allocations.print(System.err);
+        if (coverage != null) printCoverage();
+
+        System.exit(saved ? exitStatus(runtime) : EXIT_CANT_CREATE);
     }
 
-    private static void runPrompt() throws IOException {
-        InputStreamReader input = new InputStreamReader(System.in);
-        BufferedReader reader = new BufferedReader(input);
+    /**
+     * @return a runtime set up as the command line asked, for --batch and --daemon.
+     */
+    static LoxRuntime newRuntime(PrintStream out, PrintStream err) throws IOException {
+        return configure(new LoxRuntime(out, err));
+    }
 
-        for (;;) {
-            System.out.print("> ");
-            String line = reader.readLine();
-            if (line == null) break;
+    private static LoxRuntime configure(LoxRuntime runtime) throws IOException {
+        runtime.setLimits(limits);
+        runtime.setEngine(engine);
 
-            run(line);
-            // Reset error status for the next line.
-            hadError = false;
-            hadRuntimeError = false;
+        // Start from wherever a previous run (e.g., a prelude) left off.
+        if (loadSnapshot != null) {
+            Snapshot.restore(runtime.interpreter, loadSnapshot);
         }
+        return runtime;
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+    /**
+     * @return the exit status a script run by this runtime should have.
+     */
+    static int exitStatus(LoxRuntime runtime) {
+        if (runtime.hadError()) return EXIT_ERROR;
+        if (runtime.hadLimitExceeded()) return EXIT_LIMIT_EXCEEDED;
+        if (runtime.hadRuntimeError()) return EXIT_RUNTIME_ERROR;
+        return 0;
+    }
 
-        // Stop if there were any errors during lexing/parsing.
-        if (hadError) return;
+    private static void usage() {
+        System.err.println("Usage: jlox [-O] [--engine tree|switch|closure] [--cache-dir dir] [--load-snapshot file] [--save-snapshot file]"
+                + " [--startup-report] [script]");
+        System.err.println("       jlox --batch dir|- [--jobs n] [--cache-dir dir] [--load-snapshot file]");
+        System.err.println("       jlox --daemon [--socket path] [--cache-dir dir] [--load-snapshot file]");
+        System.err.println("Limits: [--max-statements n] [--max-calls n] [--max-allocations n] [--max-depth n]"
+                + " [--timeout ms]");
+        System.err.println("Profiling: [--profile] [--profile-stacks file] [--sample] [--sample-stacks file]"
+                + " [--sample-rate hz] [--stats] [--stats-json]"
+                + " [--allocations] [--coverage tree|lines]");
+        System.exit(EXIT_USAGE);
+    }
 
-        // Static analysis time!
-        // Resolve all local variables:
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
+    private static long positive(String number) {
+        return positive(number, Long.MAX_VALUE);
+    }
 
-        // Stop if there were any errors during static analysis.
-        if (hadError) return;
+    /**
+     * @return the number, if it's from 1 to the maximum; else, shows the usage and exits.
+     */
+    private static long positive(String number, long maximum) {
+        try {
+            long n = Long.parseLong(number);
+            if (n > 0 && n <= maximum) return n;
+        } catch (NumberFormatException e) {
+            // Fall through.
+        }
+        usage();
+        return 0;
+    }
 
-        // Yay, interpret it!
-        interpreter.interpret(statements);
+    private static Engine parseEngine(String name) {
+        try {
+            return Engine.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            usage();
+            return null;
+        }
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    /**
+     * @return whether to print coverage by line of the source, instead of as a tree.
+     */
+    private static boolean parseCoverageFormat(String format) {
+        if (format.equals("lines")) return true;
+        if (!format.equals("tree")) usage();
+        return false;
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
+    private static void printCoverage() {
+        List<Stmt> statements = new ArrayList<>();
+        for (Program program : coverage.programs()) {
+            statements.addAll(program.statements);
+        }
+
+        AstPrinter printer = new AstPrinter(coverage);
+        if (coverageByLine) {
+            System.err.printf("%10s %10s %5s  %s%n", "runs", "total ms", "line", "source");
+            System.err.print(printer.printLines(scriptSource, statements));
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            System.err.printf("%10s %10s  %s%n", "runs", "total ms", "program");
+            System.err.print(printer.print(statements));
         }
     }
 
+    private static Profiler profiler() {
+        return profiler == null ? new Profiler() : profiler;
+    }
+
+    private static Limits limits() {
+        if (limits == null) limits = new Limits();
+        return limits;
+    }
+
+    private static void runFile(String path) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            System.err.println("Can't read " + path);
+            System.exit(EXIT_NO_INPUT);
+            return;
+        }
+        String source = new String(bytes, StandardCharsets.UTF_8);
+        scriptSource = source;
+        if (startupReport != null) startupReport.scriptStarted();
+        runSource(runtime, source);
+        if (startupReport != null) startupReport.scriptFinished();
+    }
+
     /**
-     * Report an error.
-     * @param line line number the error occurred on.
-     * @param where idk lol
-     * @param message English message
+     * Compiles (or loads from the cache, if there is one) and executes the source code.
      */
-    static void report(int line, String where, String message) {
-        System.err.println(
-                "[line " + line + "] Error" + where + ": " + message
-        );
-        hadError = true;
+    static void runSource(LoxRuntime runtime, String source) {
+        // Skip straight to interpreting if we've seen this exact script before.
+        Program program = cache == null ? null : cache.load(source);
+        if (program == null) {
+            program = runtime.compile(source);
+            if (program != null && cache != null) {
+                cache.store(source, program);
+            }
+        }
+
+        if (program != null) {
+            // Optimize after caching, so that the cache works with or without -O.
+            if (optimize) program = Inliner.inline(program);
+            runtime.execute(program);
+        }
     }
 
-    public static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage()
-                + "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
+    private static void runPrompt() throws IOException {
+        InputStreamReader input = new InputStreamReader(System.in);
+        BufferedReader reader = new BufferedReader(input);
+
+        for (;;) {
+            System.out.print("> ");
+            String line = reader.readLine();
+            if (line == null) break;
+
+            runtime.run(line);
+            // Reset error status for the next line.
+            runtime.resetErrors();
+        }
     }
 }
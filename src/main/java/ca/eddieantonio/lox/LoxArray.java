@@ -0,0 +1,75 @@
+package ca.eddieantonio.lox;
+
+import java.util.List;
+
+/**
+ * A fixed-size array, made with the array() native.
+ *
+ *     var squares = array(10);
+ *     squares.set(0, 0);
+ *     print squares.get(0) + squares.length;
+ */
+class LoxArray {
+    // The longest array the JVM can make.
+    static final int MAXIMUM_LENGTH = Integer.MAX_VALUE - 8;
+
+    final Object[] elements;
+    // The isolated interpreter that made this array, or null if it is shared.
+    final Interpreter owner;
+
+    LoxArray(int length, Interpreter owner) {
+        this.elements = allocate(length);
+        this.owner = owner;
+    }
+
+    private static Object[] allocate(int length) {
+        try {
+            return new Object[length];
+        } catch (OutOfMemoryError e) {
+            // Only this one array didn't fit, so it's safe to carry on without it.
+            throw new RuntimeError("Not enough memory for an array of length " + length);
+        }
+    }
+
+    Object get(Token name) {
+        switch (name.lexeme) {
+            case "length":
+                return (double) elements.length;
+            case "get":
+                return new NativeFunction("get", 1) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return elements[index(arguments.get(0))];
+                    }
+                };
+            case "set":
+                return new NativeFunction("set", 2) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        interpreter.checkCanModify(owner, "array");
+                        Object value = arguments.get(1);
+                        elements[index(arguments.get(0))] = value;
+                        return value;
+                    }
+                };
+        }
+
+        throw new RuntimeError(name, "Arrays don't have a property called '" + name.lexeme + "'");
+    }
+
+    private int index(Object index) {
+        if (!(index instanceof Double number) || number != Math.floor(number)) {
+            throw new RuntimeError("Array index must be a whole number");
+        }
+        if (number < 0 || number >= elements.length) {
+            throw new RuntimeError("Array index " + number.intValue()
+                    + " is out of bounds for an array of length " + elements.length);
+        }
+        return number.intValue();
+    }
+
+    @Override
+    public String toString() {
+        return "<array of length " + elements.length + ">";
+    }
+}
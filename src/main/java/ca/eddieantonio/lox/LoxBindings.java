@@ -0,0 +1,85 @@
+package ca.eddieantonio.lox;
+
+import javax.script.Bindings;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A view of an Environment (usually the globals) as javax.script Bindings.
+ * Values are converted by JavaInterop on the way in and out.
+ */
+class LoxBindings extends AbstractMap<String, Object> implements Bindings {
+    final Environment environment;
+
+    LoxBindings(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        checkName(name);
+        Object previous = JavaInterop.toJava(environment.values.get(name));
+        environment.define(name, JavaInterop.toLox(value));
+        return previous;
+    }
+
+    @Override
+    public Object get(Object name) {
+        checkName(name);
+        return JavaInterop.toJava(environment.values.get(name));
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        checkName(name);
+        return environment.values.containsKey(name);
+    }
+
+    @Override
+    public Object remove(Object name) {
+        checkName(name);
+        return JavaInterop.toJava(environment.values.remove(name));
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                Iterator<Entry<String, Object>> entries = environment.values.entrySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        Entry<String, Object> entry = entries.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(), JavaInterop.toJava(entry.getValue()));
+                    }
+
+                    @Override
+                    public void remove() {
+                        entries.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return environment.values.size();
+            }
+        };
+    }
+
+    // Required by the Bindings contract.
+    private static void checkName(Object name) {
+        if (name == null) throw new NullPointerException("name is null");
+        if (!(name instanceof String string)) throw new ClassCastException("name is not a String");
+        if (string.isEmpty()) throw new IllegalArgumentException("name is empty");
+    }
+}
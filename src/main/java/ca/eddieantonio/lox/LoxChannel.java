@@ -0,0 +1,104 @@
+package ca.eddieantonio.lox;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, first-in-first-out queue for passing values between tasks.
+ *
+ * Sending blocks while the channel is full; receiving blocks while it is
+ * empty. Once a channel is closed, nothing more can be sent, and receiving
+ * from it returns nil once it is drained.
+ *
+ * The buffer grows as it fills, up to the capacity, so a big capacity
+ * costs nothing until it's used.
+ */
+class LoxChannel {
+    static final int MAXIMUM_CAPACITY = Integer.MAX_VALUE - 8;
+    private static final int INITIAL_BUFFER = 16;
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // All guarded by lock.
+    private Object[] buffer;
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    LoxChannel(int capacity) {
+        this.capacity = capacity;
+        this.buffer = new Object[Math.min(capacity, INITIAL_BUFFER)];
+    }
+
+    /**
+     * @param governor stops the wait when the run is out of time.
+     * @return false if the channel was closed (before there was room).
+     */
+    boolean send(Object value, Governor governor) {
+        lock.lock();
+        try {
+            while (count == capacity && !closed) {
+                governor.await(notFull);
+            }
+            if (closed) return false;
+
+            if (count == buffer.length) grow();
+            buffer[(head + count) % buffer.length] = value;
+            count++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param governor stops the wait when the run is out of time.
+     * @return the next value, or nil if the channel was closed and is empty.
+     */
+    Object receive(Governor governor) {
+        lock.lock();
+        try {
+            while (count == 0 && !closed) {
+                governor.await(notEmpty);
+            }
+            if (count == 0) return null;
+
+            Object value = buffer[head];
+            buffer[head] = null;
+            head = (head + 1) % buffer.length;
+            count--;
+            notFull.signal();
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void grow() {
+        Object[] grown = new Object[(int) Math.min((long) buffer.length * 2, capacity)];
+        for (int i = 0; i < count; i++) {
+            grown[i] = buffer[(head + i) % buffer.length];
+        }
+        buffer = grown;
+        head = 0;
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
@@ -6,12 +6,15 @@ import java.util.Map;
 public class LoxClass implements LoxCallable {
     final String name;
     final LoxClass superclass;
-    private final Map<String, LoxFunction> methods;
+    final Map<String, LoxFunction> methods;
+    // Methods never change once the class exists, so look this up just once.
+    final LoxFunction initializer;
 
     public LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
         this.name = name;
         this.superclass = superclass;
         this.methods = methods;
+        this.initializer = findMethod("init");
     }
 
     LoxFunction findMethod(String name) {
@@ -28,10 +31,12 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
+        interpreter.allocated();
+        if (interpreter.counters != null) interpreter.counters.instances++;
+        interpreter.noteAllocation(Allocations.Kind.INSTANCE);
+        LoxInstance instance = new LoxInstance(this, interpreter.ownerOfNewObjects());
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.callOn(interpreter, instance, arguments);
         }
 
         return instance;
@@ -39,7 +44,6 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
         if (initializer == null) return 0;
         return initializer.arity();
     }
@@ -4,14 +4,21 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
-    private final Environment closure;
-    private final boolean isInitializer;
+    final Stmt.Function declaration;
+    final Environment closure;
+    final boolean isInitializer;
+    // The compiled body, when running on the closure engine.
+    ClosureCompiler.Body body;
 
     LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+        this(declaration, closure, isInitializer, null);
+    }
+
+    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, ClosureCompiler.Body body) {
         this.closure = closure;
         this.declaration = declaration;
         this.isInitializer = isInitializer;
+        this.body = body;
     }
 
     @Override
@@ -21,7 +28,35 @@ public class LoxFunction implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
+        return call(interpreter, closure, arguments);
+    }
+
+    /**
+     * Calls this method on the instance, exactly like bind(instance).call(),
+     * but without making a bound method that would just be thrown away.
+     */
+    Object callOn(Interpreter interpreter, LoxInstance instance, List<Object> arguments) {
+        if (interpreter.counters != null) interpreter.counters.environments++;
+        interpreter.noteAllocation(Allocations.Kind.ENVIRONMENT);
+        return call(interpreter, thisEnvironment(instance), arguments);
+    }
+
+    private Object call(Interpreter interpreter, Environment closure, List<Object> arguments) {
+        if (interpreter.compiler != null) return interpreter.compiler.call(interpreter, this, closure, arguments);
+        if (interpreter.coverage == null) return run(interpreter, closure, arguments);
+
+        long[] counts = interpreter.coverage.call(declaration);
+        long started = System.nanoTime();
+        try {
+            return run(interpreter, closure, arguments);
+        } finally {
+            interpreter.coverage.exit(counts, started);
+        }
+    }
+
+    private Object run(Interpreter interpreter, Environment closure, List<Object> arguments) {
+
+        Environment environment = interpreter.newEnvironment(closure);
         assert arguments.size() == arity();
         for (int i = 0; i < arity(); i++) {
             environment.define(declaration.params.get(i).lexeme, arguments.get(i));
@@ -41,9 +76,13 @@ public class LoxFunction implements LoxCallable {
     }
 
     LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(closure);
+        return new LoxFunction(declaration, thisEnvironment(instance), isInitializer, body);
+    }
+
+    private Environment thisEnvironment(LoxInstance instance) {
+        Environment environment = new Environment(closure, null, 1);
         environment.define("this", instance);
-        return new LoxFunction(declaration, environment, isInitializer);
+        return environment;
     }
 
     @Override
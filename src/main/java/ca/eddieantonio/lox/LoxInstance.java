@@ -1,15 +1,21 @@
 package ca.eddieantonio.lox;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class LoxInstance {
-    private final LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    final LoxClass klass;
+    // Instances of a class usually get the same fields in the same order, so slots make good hints.
+    final Variables fields = new Variables();
+    // The isolated interpreter that made this instance, or null if it is shared.
+    final Interpreter owner;
 
     LoxInstance(LoxClass klass) {
+        this(klass, null);
+    }
+
+    LoxInstance(LoxClass klass, Interpreter owner) {
         this.klass = klass;
+        this.owner = owner;
     }
 
     Object get(Token name) {
@@ -24,6 +30,14 @@ public class LoxInstance {
         throw new RuntimeError(name, "Undefined property: '" + name.lexeme + "'");
     }
 
+    /**
+     * @return the method get() would bind, or null if get() would find something else.
+     */
+    LoxFunction findMethod(String name) {
+        if (fields.containsKey(name)) return null;
+        return klass.findMethod(name);
+    }
+
     void set(Token name, Object value) {
         fields.put(name.lexeme, value);
     }
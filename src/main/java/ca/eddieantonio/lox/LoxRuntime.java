@@ -0,0 +1,218 @@
+package ca.eddieantonio.lox;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * An independent Lox interpreter, with its own globals, error state, and output.
+ *
+ * Use one LoxRuntime per script to run many scripts in the same JVM; a single
+ * LoxRuntime must only be used by one thread at a time. Programs from compile()
+ * can be shared freely between runtimes.
+ */
+public class LoxRuntime {
+    final ErrorReporter reporter;
+    final Interpreter interpreter;
+    // Set with --stats.
+    private Stats stats = null;
+    // Set with --coverage.
+    private Coverage coverage = null;
+
+    public LoxRuntime() {
+        this(System.out, System.err);
+    }
+
+    public LoxRuntime(PrintStream out, PrintStream err) {
+        this.reporter = new ErrorReporter(err);
+        this.interpreter = new Interpreter(reporter, out);
+    }
+
+    /**
+     * Scans, parses, and resolves the source code.
+     * Any errors are reported to this runtime's error stream.
+     *
+     * @return the program, or null if there were static errors.
+     */
+    public Program compile(String source) {
+        long started = System.nanoTime();
+        Events.PhaseEvent scanning = Events.beginPhase("scan");
+        Scanner scanner = new Scanner(source, reporter);
+        List<Token> tokens = scanner.scanTokens();
+        Events.endPhase(scanning);
+        long scanned = System.nanoTime();
+
+        Events.PhaseEvent parsing = Events.beginPhase("parse");
+        Parser parser = new Parser(tokens, reporter);
+        List<Stmt> statements = parser.parse();
+        Events.endPhase(parsing);
+        long parsed = System.nanoTime();
+
+        // Stop if there were any errors during lexing/parsing.
+        if (reporter.hadError) {
+            if (stats != null) stats.compiled(tokens.size(), scanned - started, parsed - scanned, 0);
+            return null;
+        }
+
+        // Static analysis time!
+        // Resolve all local variables:
+        Events.PhaseEvent resolving = Events.beginPhase("resolve");
+        Resolver resolver = new Resolver(reporter, interpreter.globals.constants());
+        resolver.resolve(statements);
+        Events.endPhase(resolving);
+        if (stats != null) {
+            stats.compiled(tokens.size(), scanned - started, parsed - scanned, System.nanoTime() - parsed);
+        }
+
+        // Stop if there were any errors during static analysis.
+        if (reporter.hadError) return null;
+
+        return new Program(statements);
+    }
+
+    /**
+     * Runs a program in this runtime's global environment.
+     * Runtime errors are reported to this runtime's error stream.
+     */
+    public void execute(Program program) {
+        Events.PhaseEvent interpreting = Events.beginPhase("interpret");
+        long started = System.nanoTime();
+        interpreter.interpret(program);
+        if (stats != null) stats.executed(program, System.nanoTime() - started);
+        if (coverage != null) coverage.executed(program);
+        Events.endPhase(interpreting);
+    }
+
+    /**
+     * Compiles and executes the source code, if it has no static errors.
+     */
+    public void run(String source) {
+        Program program = compile(source);
+        if (program != null) execute(program);
+    }
+
+    /**
+     * Calls a Lox function (or method, or class) from Java, e.g., one that a
+     * script defined. Runtime errors are reported to this runtime's error stream.
+     *
+     * @return what the function returned, or null if it failed.
+     */
+    Object invoke(LoxCallable function, List<Object> arguments) {
+        if (arguments.size() != function.arity()) {
+            reporter.runtimeError(new RuntimeError("Expected " +
+                    function.arity() + " arguments but got " +
+                    arguments.size() + "."));
+            return null;
+        }
+
+        Scheduler scheduler = interpreter.scheduler;
+        scheduler.enter();
+        try {
+            interpreter.beginRun();
+            return interpreter.call(function, arguments, null);
+        } catch (RuntimeError error) {
+            interpreter.runtimeError(error);
+            return null;
+        } finally {
+            // Like interpret(): tasks the function spawned get to finish.
+            scheduler.awaitAll();
+            interpreter.out.flush();
+            scheduler.exit();
+        }
+    }
+
+    /**
+     * Limits every later run (each execute(), run(), and call from Java),
+     * or lifts them, if null.
+     */
+    public void setLimits(Limits limits) {
+        interpreter.limits = limits;
+    }
+
+    /**
+     * Stops the current run, and every later one, as if it ran out of time.
+     * Unlike everything else here, this may be called from another thread.
+     */
+    public void cancel() {
+        interpreter.cancelled.set(true);
+    }
+
+    /**
+     * Chooses how later runs are executed. They behave the same either way.
+     */
+    public void setEngine(Engine engine) {
+        interpreter.compiler = engine == Engine.CLOSURE ? new ClosureCompiler() : null;
+        interpreter.switchDispatch = engine == Engine.SWITCH;
+        instrumentCompiler();
+    }
+
+    /**
+     * Times every call that later runs make, for the profiler's report.
+     */
+    void setProfiler(Profiler profiler) {
+        interpreter.profile = profiler == null ? null : profiler.newStack();
+    }
+
+    /**
+     * Lets the sampler see which functions and lines later runs are in.
+     */
+    void setSampler(Sampler sampler) {
+        interpreter.shadow = sampler == null ? null : sampler.newStack();
+        instrumentCompiler();
+    }
+
+    /**
+     * Counts what later compiles and runs do, for the stats report.
+     */
+    void setStats(Stats stats) {
+        this.stats = stats;
+        interpreter.counters = stats == null ? null : stats.newCounters();
+    }
+
+    /**
+     * Counts what later runs allocate, and on which lines.
+     */
+    void setAllocations(Allocations allocations) {
+        interpreter.allocations = allocations == null ? null : allocations.newCounts();
+        instrumentCompiler();
+    }
+
+    /**
+     * Counts how many times later runs run each statement and expression,
+     * and how long they take. Only the tree-walking engines can count them.
+     */
+    void setCoverage(Coverage coverage) {
+        this.coverage = coverage;
+        interpreter.coverage = coverage == null ? null : coverage.newCounts();
+    }
+
+    /**
+     * Compiles in only what the sampler and --allocations need, so the closure engine doesn't pay for them otherwise.
+     */
+    private void instrumentCompiler() {
+        if (interpreter.compiler == null) return;
+        interpreter.compiler.reportLines = interpreter.shadow != null || interpreter.allocations != null;
+        interpreter.compiler.countAllocations = interpreter.allocations != null;
+    }
+
+    public boolean hadError() {
+        return reporter.hadError;
+    }
+
+    public boolean hadRuntimeError() {
+        return reporter.hadRuntimeError;
+    }
+
+    /**
+     * @return whether a runtime error was because the run went over its Limits.
+     */
+    public boolean hadLimitExceeded() {
+        return reporter.hadLimitExceeded;
+    }
+
+    /**
+     * Forget about previous errors, e.g., before the next line of the REPL.
+     */
+    public void resetErrors() {
+        reporter.reset();
+    }
+}
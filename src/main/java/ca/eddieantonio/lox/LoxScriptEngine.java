@@ -0,0 +1,293 @@
+package ca.eddieantonio.lox;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs Lox through javax.script (JSR-223).
+ *
+ * Each engine has its own LoxRuntime, whose globals are the engine scope
+ * bindings. A script evaluated with other bindings sees them as globals
+ * (as well as the engine's own), and only what it defines or assigns is
+ * copied back to them; the engine's globals are left as they were. Like a
+ * LoxRuntime, an engine must only be used by one thread at a time; use one
+ * engine per thread instead. Lox statements don't have values, so eval()
+ * always returns null.
+ */
+public class LoxScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+    private final LoxScriptEngineFactory factory;
+    private final LoxRuntime runtime;
+    private final ContextOutput output = new ContextOutput();
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+    LoxScriptEngine(LoxScriptEngineFactory factory) {
+        this.factory = factory;
+        this.runtime = new LoxRuntime(new PrintStream(output, true, StandardCharsets.UTF_8),
+                new PrintStream(errors, true, StandardCharsets.UTF_8));
+        context.setBindings(new LoxBindings(runtime.interpreter.globals), ScriptContext.ENGINE_SCOPE);
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return execute(compileProgram(script), context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new LoxBindings(new Environment());
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        Program program = compileProgram(script);
+        return new CompiledScript() {
+            @Override
+            public Object eval(ScriptContext context) throws ScriptException {
+                return execute(program, context);
+            }
+
+            @Override
+            public ScriptEngine getEngine() {
+                return LoxScriptEngine.this;
+            }
+        };
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    @Override
+    public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+        Object function = runtime.interpreter.globals.values.get(name);
+        if (!(function instanceof LoxCallable callable)) {
+            throw new NoSuchMethodException("No function named '" + name + "'");
+        }
+        return invoke(callable, args);
+    }
+
+    @Override
+    public Object invokeMethod(Object thiz, String name, Object... args) throws ScriptException, NoSuchMethodException {
+        if (!(thiz instanceof LoxInstance instance) || thiz instanceof JavaInterop.JavaInstance) {
+            throw new IllegalArgumentException("Not a Lox instance: " + thiz);
+        }
+
+        Object method;
+        try {
+            method = instance.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+        } catch (RuntimeError error) {
+            throw new NoSuchMethodException("No method named '" + name + "'");
+        }
+        if (!(method instanceof LoxCallable callable)) {
+            throw new NoSuchMethodException("'" + name + "' is not a method");
+        }
+        return invoke(callable, args);
+    }
+
+    @Override
+    public <T> T getInterface(Class<T> type) {
+        return implement(type, name -> runtime.interpreter.globals.values.get(name),
+                this::invokeFunction);
+    }
+
+    @Override
+    public <T> T getInterface(Object thiz, Class<T> type) {
+        if (!(thiz instanceof LoxInstance instance) || thiz instanceof JavaInterop.JavaInstance) {
+            throw new IllegalArgumentException("Not a Lox instance: " + thiz);
+        }
+        return implement(type, name -> {
+            if (instance.fields.containsKey(name)) return instance.fields.get(name);
+            return instance.klass.findMethod(name);
+        }, (name, args) -> invokeMethod(thiz, name, args));
+    }
+
+    private interface Lookup {
+        Object find(String name);
+    }
+
+    private interface Call {
+        Object call(String name, Object[] args) throws ScriptException, NoSuchMethodException;
+    }
+
+    /**
+     * Implements the interface with Lox functions of the same names,
+     * or returns null if any are missing.
+     */
+    private <T> T implement(Class<T> type, Lookup lookup, Call call) {
+        if (type == null || !type.isInterface()) {
+            throw new IllegalArgumentException("Not an interface: " + type);
+        }
+        for (Method method : type.getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())
+                    && !(lookup.find(method.getName()) instanceof LoxCallable)) {
+                return null;
+            }
+        }
+
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (self, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        switch (method.getName()) {
+                            case "equals": return self == args[0];
+                            case "hashCode": return System.identityHashCode(self);
+                            default: return "<Lox implementation of " + type.getSimpleName() + ">";
+                        }
+                    }
+                    return JavaInterop.coerce(call.call(method.getName(), args), method.getReturnType());
+                });
+        return type.cast(proxy);
+    }
+
+    private Program compileProgram(String script) throws ScriptException {
+        Program program = runtime.compile(script);
+        if (program == null) throw failure();
+        return program;
+    }
+
+    private Object execute(Program program, ScriptContext context) throws ScriptException {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        Environment globals = runtime.interpreter.globals;
+        boolean foreign = bindings != null
+                && !(bindings instanceof LoxBindings loxBindings && loxBindings.environment == globals);
+
+        // Someone else's bindings: run with them copied in, and put the engine's globals back after.
+        Map<String, Object> saved = null;
+        Set<String> savedConstants = null;
+        Map<String, Object> before = null;
+        if (foreign) {
+            saved = new HashMap<>(globals.values);
+            savedConstants = globals.constants();
+            new LoxBindings(globals).putAll(bindings);
+            before = new HashMap<>(globals.values);
+        }
+
+        output.writer = context.getWriter();
+        try {
+            runtime.execute(program);
+        } finally {
+            output.flush();
+            if (foreign) {
+                copyChanges(before, globals, bindings);
+                restore(globals, saved, savedConstants);
+            }
+        }
+
+        if (runtime.hadRuntimeError()) throw failure();
+        return null;
+    }
+
+    /**
+     * Copies the globals that the script defined or assigned (to something else) to the bindings.
+     */
+    private static void copyChanges(Map<String, Object> before, Environment globals, Bindings bindings) {
+        for (Map.Entry<String, Object> global : globals.values.entrySet()) {
+            String name = global.getKey();
+            if (!before.containsKey(name) || before.get(name) != global.getValue()) {
+                bindings.put(name, JavaInterop.toJava(global.getValue()));
+            }
+        }
+    }
+
+    private static void restore(Environment globals, Map<String, Object> saved, Set<String> constants) {
+        globals.values.keySet().retainAll(saved.keySet());
+        globals.values.putAll(saved);
+        globals.setConstants(constants);
+    }
+
+    private Object invoke(LoxCallable function, Object[] args) throws ScriptException {
+        output.writer = context.getWriter();
+        Object result;
+        try {
+            result = runtime.invoke(function, JavaInterop.toLox(args));
+        } finally {
+            output.flush();
+        }
+
+        if (runtime.hadRuntimeError()) throw failure();
+        return JavaInterop.toJava(result);
+    }
+
+    /**
+     * Turns whatever the runtime reported into an exception, and starts over.
+     */
+    private ScriptException failure() {
+        String message = errors.toString(StandardCharsets.UTF_8).strip();
+        errors.reset();
+        runtime.resetErrors();
+        return new ScriptException(message, (String) get(ScriptEngine.FILENAME), -1);
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringWriter source = new StringWriter();
+        try {
+            reader.transferTo(source);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return source.toString();
+    }
+
+    /**
+     * Sends the runtime's output to the writer of the current ScriptContext.
+     */
+    private static class ContextOutput extends OutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Writer writer;
+
+        @Override
+        public void write(int b) {
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            buffer.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            if (writer == null || buffer.size() == 0) return;
+            try {
+                writer.write(buffer.toString(StandardCharsets.UTF_8));
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.reset();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ca.eddieantonio.lox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A function that remembers its results, made with the memoize() native.
+ *
+ *     fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }
+ *     fib = memoize(fib, 100);
+ *     print fib(80);
+ *     print fib.hits + fib.misses;
+ *
+ * Results are looked up by their arguments, compared like ==, and only the
+ * `capacity` most recently used results are kept. A hit doesn't call the
+ * function at all, so it should be pure.
+ */
+class MemoizedFunction implements LoxCallable {
+    final LoxCallable function;
+    final int capacity;
+    // Guarded by this, since parallel functions can call us at the same time.
+    private final Map<List<Object>, Object> results;
+    private long hits = 0;
+    private long misses = 0;
+
+    MemoizedFunction(LoxCallable function, int capacity) {
+        this.function = function;
+        this.capacity = capacity;
+        // In access order, so the eldest entry is the least recently used.
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+                return size() > MemoizedFunction.this.capacity;
+            }
+        };
+    }
+
+    @Override
+    public int arity() {
+        return function.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        // List.equals() compares elements like Interpreter.isEqual().
+        List<Object> key = new ArrayList<>(arguments);
+        synchronized (this) {
+            Object result = results.get(key);
+            if (result != null || results.containsKey(key)) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+
+        // Don't hold the lock while calling: the function may well call us again.
+        Object result = function.call(interpreter, arguments);
+        synchronized (this) {
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    Object get(Token name) {
+        synchronized (this) {
+            switch (name.lexeme) {
+                case "hits":
+                    return (double) hits;
+                case "misses":
+                    return (double) misses;
+                case "size":
+                    return (double) results.size();
+                case "capacity":
+                    return (double) capacity;
+                case "clear":
+                    return new NativeFunction("clear", 0) {
+                        @Override
+                        public Object call(Interpreter interpreter, List<Object> arguments) {
+                            synchronized (MemoizedFunction.this) {
+                                results.clear();
+                                hits = 0;
+                                misses = 0;
+                            }
+                            return null;
+                        }
+                    };
+            }
+        }
+
+        throw new RuntimeError(name, "Memoized functions don't have a property called '" + name.lexeme + "'");
+    }
+
+    @Override
+    public String toString() {
+        return "<memoized " + function + ">";
+    }
+}
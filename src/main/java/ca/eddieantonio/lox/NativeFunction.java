@@ -0,0 +1,27 @@
+package ca.eddieantonio.lox;
+
+/**
+ * A built-in function, implemented in Java.
+ *
+ * Natives are known by name, so that they can be found again after
+ * being saved in a Snapshot.
+ */
+abstract class NativeFunction implements LoxCallable {
+    final String name;
+    private final int arity;
+
+    NativeFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<native function '" + name + "'>";
+    }
+}
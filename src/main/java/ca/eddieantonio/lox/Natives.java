@@ -0,0 +1,186 @@
+package ca.eddieantonio.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The built-in functions in every Lox global environment.
+ *
+ * Natives report errors by throwing a RuntimeError without a token; the
+ * interpreter fills in the call site.
+ */
+class Natives {
+    static void define(Interpreter interpreter) {
+        interpreter.defineNative(new NativeFunction("clock", 0) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                return (double) System.currentTimeMillis() / 1000.0;
+            }
+        });
+
+        // Printing is buffered; this makes sure everything printed so far is out.
+        interpreter.defineNative(new NativeFunction("flush", 0) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                interpreter.out.flush();
+                return null;
+            }
+        });
+
+        interpreter.defineNative(new NativeFunction("memoize", 2) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!(arguments.get(0) instanceof LoxCallable function)) {
+                    throw new RuntimeError("memoize() needs a function");
+                }
+                Object capacity = arguments.get(1);
+                if (!(capacity instanceof Double size) || size < 1 || size > Integer.MAX_VALUE
+                        || size != Math.floor(size)) {
+                    throw new RuntimeError("A memoized function's capacity must be a whole number from 1 to "
+                            + Integer.MAX_VALUE);
+                }
+                interpreter.allocated();
+                return new MemoizedFunction(function, size.intValue());
+            }
+        });
+
+        // Tasks and channels:
+
+        interpreter.defineNative(new NativeFunction("spawn", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!(arguments.get(0) instanceof LoxCallable function) || function.arity() != 0) {
+                    throw new RuntimeError("spawn() needs a function that takes no arguments");
+                }
+
+                checkNotParallel(interpreter, "spawn()");
+                // The task gets its own interpreter, so it has its own current environment.
+                Interpreter task = interpreter.fork();
+                interpreter.scheduler.spawn(() -> task.runTask(function));
+                return null;
+            }
+        });
+
+        interpreter.defineNative(new NativeFunction("channel", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                Object capacity = arguments.get(0);
+                if (!(capacity instanceof Double size) || size < 1 || size > LoxChannel.MAXIMUM_CAPACITY
+                        || size != Math.floor(size)) {
+                    throw new RuntimeError("A channel's capacity must be a whole number from 1 to "
+                            + LoxChannel.MAXIMUM_CAPACITY);
+                }
+                interpreter.allocated();
+                return new LoxChannel(size.intValue());
+            }
+        });
+
+        interpreter.defineNative(new NativeFunction("send", 2) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                checkNotParallel(interpreter, "send()");
+                LoxChannel channel = channel(arguments.get(0));
+                Object value = arguments.get(1);
+                boolean sent = interpreter.scheduler.blocking(() -> channel.send(value, interpreter.governor));
+                if (!sent) throw new RuntimeError("Can't send to a closed channel");
+                return null;
+            }
+        });
+
+        interpreter.defineNative(new NativeFunction("receive", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                checkNotParallel(interpreter, "receive()");
+                LoxChannel channel = channel(arguments.get(0));
+                return interpreter.scheduler.blocking(() -> channel.receive(interpreter.governor));
+            }
+        });
+
+        interpreter.defineNative(new NativeFunction("close", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                checkNotParallel(interpreter, "close()");
+                channel(arguments.get(0)).close();
+                return null;
+            }
+        });
+
+        // Lets other tasks run meanwhile. Lox has no I/O, so this is the only way for tasks to overlap.
+        interpreter.defineNative(new NativeFunction("sleep", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                if (!(arguments.get(0) instanceof Double millis) || millis < 0) {
+                    throw new RuntimeError("sleep() needs a number of milliseconds, at least 0");
+                }
+                Governor governor = interpreter.governor;
+                interpreter.scheduler.blocking(() -> {
+                    governor.sleep((long) (millis * 1_000_000));
+                    return null;
+                });
+                governor.checkTime();
+                return null;
+            }
+        });
+
+        // Arrays and parallelism:
+
+        interpreter.defineNative(new NativeFunction("array", 1) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                Object length = arguments.get(0);
+                if (!(length instanceof Double size) || size < 0 || size > LoxArray.MAXIMUM_LENGTH
+                        || size != Math.floor(size)) {
+                    throw new RuntimeError("An array's length must be a whole number from 0 to "
+                            + LoxArray.MAXIMUM_LENGTH);
+                }
+                // Counted by its length, so the allocation limit bounds how much memory arrays take.
+                interpreter.allocated(1 + size.longValue());
+                return new LoxArray(size.intValue(), interpreter.ownerOfNewObjects());
+            }
+        });
+
+        interpreter.defineNative(new NativeFunction("parallelMap", 2) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                LoxArray array = array(arguments.get(0));
+                LoxCallable function = function(arguments.get(1), 1, "parallelMap()");
+                return Parallel.map(interpreter, array, function);
+            }
+        });
+
+        interpreter.defineNative(new NativeFunction("parallelReduce", 3) {
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                LoxArray array = array(arguments.get(0));
+                LoxCallable function = function(arguments.get(1), 2, "parallelReduce()");
+                return Parallel.reduce(interpreter, array, function, arguments.get(2));
+            }
+        });
+    }
+
+    private static void checkNotParallel(Interpreter interpreter, String what) {
+        if (interpreter.isolated) {
+            throw new RuntimeError("Can't use " + what + " inside a parallel function");
+        }
+    }
+
+    private static LoxArray array(Object value) {
+        if (value instanceof LoxArray array) return array;
+        throw new RuntimeError("Expected an array, but got " + value);
+    }
+
+    private static LoxCallable function(Object value, int arity, String what) {
+        if (value instanceof LoxCallable function && function.arity() == arity) return function;
+        throw new RuntimeError(what + " needs a function that takes " + arity
+                + (arity == 1 ? " argument" : " arguments"));
+    }
+
+    private static LoxChannel channel(Object value) {
+        if (value instanceof LoxChannel channel) return channel;
+        throw new RuntimeError("Expected a channel, but got " + value);
+    }
+
+    static List<Object> noArguments() {
+        return new ArrayList<>();
+    }
+}
@@ -0,0 +1,113 @@
+package ca.eddieantonio.lox;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where print statements go.
+ *
+ * Output is collected in a big buffer, which is written out when it fills up,
+ * when the script calls flush(), and when a run ends. Whole numbers are
+ * formatted straight into the buffer, without making a String first.
+ */
+class Output {
+    private static final int SIZE = 1 << 16;
+    // Longest a whole number below FAST_LIMIT can be, including its sign.
+    private static final int MAX_DIGITS = 9;
+    // Whole numbers from here on print like "1.0E7", so leave them to Double.toString().
+    private static final double FAST_LIMIT = 1e7;
+
+    private final PrintStream sink;
+    private final byte[] buffer = new byte[SIZE];
+    private int count = 0;
+
+    Output(PrintStream sink) {
+        this.sink = sink;
+    }
+
+    synchronized void println(String text) {
+        int length = text.length();
+        if (length >= buffer.length - count) flushBuffer();
+
+        if (length < buffer.length - count) {
+            int start = count;
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    // Not ASCII, so let Java encode it.
+                    count = start;
+                    write(text.getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                buffer[count++] = (byte) c;
+            }
+        } else {
+            write(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        newline();
+    }
+
+    /**
+     * Prints a number exactly like Interpreter.stringify() would.
+     */
+    synchronized void println(double number) {
+        if (number != (long) number || Math.abs(number) >= FAST_LIMIT) {
+            println(Interpreter.stringify(number));
+            return;
+        }
+
+        if (MAX_DIGITS + 1 > buffer.length - count) flushBuffer();
+
+        long n = (long) number;
+        // Check the sign bit, so that -0.0 prints as "-0", like Double.toString().
+        if (Double.doubleToRawLongBits(number) < 0) {
+            buffer[count++] = '-';
+            n = -n;
+        }
+
+        int start = count;
+        do {
+            buffer[count++] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+
+        // The digits came out backwards.
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+
+        newline();
+    }
+
+    synchronized void flush() {
+        flushBuffer();
+        sink.flush();
+    }
+
+    private void newline() {
+        if (count == buffer.length) flushBuffer();
+        buffer[count++] = '\n';
+        if (count == buffer.length) flushBuffer();
+    }
+
+    private void write(byte[] bytes) {
+        if (bytes.length > buffer.length - count) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                sink.write(bytes, 0, bytes.length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void flushBuffer() {
+        if (count == 0) return;
+        sink.write(buffer, 0, count);
+        count = 0;
+    }
+}
@@ -0,0 +1,130 @@
+package ca.eddieantonio.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * parallelMap() and parallelReduce(), run on the common ForkJoinPool.
+ *
+ * Every chunk of work gets its own isolated interpreter. While the workers run,
+ * everything that existed before the call is shared between them, so they
+ * may read it but not change it: assigning to a variable, field, or array
+ * element that a worker didn't create itself is a RuntimeError. Lox code that
+ * only reads shared state and builds new values is therefore always safe to
+ * run in parallel.
+ */
+class Parallel {
+    // Split the work into at least this many chunks per core, to balance the load.
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * @return a new array of function(element) for every element, in the same order.
+     */
+    static LoxArray map(Interpreter interpreter, LoxArray array, LoxCallable function) {
+        interpreter.allocated(1 + array.elements.length);
+        LoxArray result = new LoxArray(array.elements.length, interpreter.ownerOfNewObjects());
+        ForkJoinPool.commonPool().invoke(new MapTask(interpreter, array.elements, result.elements,
+                function, 0, array.elements.length, grainSize(array.elements.length)));
+        return result;
+    }
+
+    /**
+     * Combines every element using function, which must be associative,
+     * and for which initial must be an identity. Each chunk starts from initial.
+     */
+    static Object reduce(Interpreter interpreter, LoxArray array, LoxCallable function, Object initial) {
+        return ForkJoinPool.commonPool().invoke(new ReduceTask(interpreter, array.elements,
+                function, initial, 0, array.elements.length, grainSize(array.elements.length)));
+    }
+
+    private static int grainSize(int length) {
+        int chunks = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+        return Math.max(1, length / chunks);
+    }
+
+    private static List<Object> arguments(Object... values) {
+        List<Object> arguments = new ArrayList<>(values.length);
+        for (Object value : values) arguments.add(value);
+        return arguments;
+    }
+
+    private static class MapTask extends RecursiveAction {
+        private final Interpreter parent;
+        private final Object[] input;
+        private final Object[] output;
+        private final LoxCallable function;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        MapTask(Interpreter parent, Object[] input, Object[] output, LoxCallable function,
+                int start, int end, int grain) {
+            this.parent = parent;
+            this.input = input;
+            this.output = output;
+            this.function = function;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                Interpreter worker = parent.isolatedFork();
+                for (int i = start; i < end; i++) {
+                    output[i] = worker.call(function, arguments(input[i]), null);
+                }
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new MapTask(parent, input, output, function, start, middle, grain),
+                    new MapTask(parent, input, output, function, middle, end, grain));
+        }
+    }
+
+    private static class ReduceTask extends RecursiveTask<Object> {
+        private final Interpreter parent;
+        private final Object[] input;
+        private final LoxCallable function;
+        private final Object initial;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        ReduceTask(Interpreter parent, Object[] input, LoxCallable function, Object initial,
+                   int start, int end, int grain) {
+            this.parent = parent;
+            this.input = input;
+            this.function = function;
+            this.initial = initial;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Object compute() {
+            if (end - start <= grain) {
+                Interpreter worker = parent.isolatedFork();
+                Object accumulator = initial;
+                for (int i = start; i < end; i++) {
+                    accumulator = worker.call(function, arguments(accumulator, input[i]), null);
+                }
+                return accumulator;
+            }
+
+            int middle = (start + end) >>> 1;
+            ReduceTask left = new ReduceTask(parent, input, function, initial, start, middle, grain);
+            ReduceTask right = new ReduceTask(parent, input, function, initial, middle, end, grain);
+            right.fork();
+            Object leftResult = left.compute();
+            Object rightResult = right.join();
+            return parent.isolatedFork().call(function, arguments(leftResult, rightResult), null);
+        }
+    }
+}
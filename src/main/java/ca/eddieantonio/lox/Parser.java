@@ -12,11 +12,16 @@ public class Parser {
     private static class ParseError extends RuntimeException {}
 
     private final List<Token> tokens;
+    private final ErrorReporter reporter;
     private int current = 0;
+    // Every variable assigned to and every call parsed so far, so that loops can tell what their bodies do.
+    private final List<String> assigned = new ArrayList<>();
+    private int calls = 0;
 
-    Parser(List<Token> tokens) {
+    Parser(List<Token> tokens, ErrorReporter reporter) {
         assert tokens.get(tokens.size() -1).type == EOF;
         this.tokens = tokens;
+        this.reporter = reporter;
     }
 
     List<Stmt> parse() {
@@ -31,9 +36,11 @@ public class Parser {
 
     private Stmt declaration() {
         try {
-            if (match(CLASS)) return classDeclaration();
-            if (match(FUN)) return function("function");
-            if (match(VAR)) return varDeclaration();
+            int line = peek().line;
+            if (match(CLASS)) return at(line, classDeclaration());
+            if (match(FUN)) return at(line, function("function"));
+            if (match(VAR)) return at(line, varDeclaration());
+            if (match(CONST)) return at(line, constDeclaration());
             return statement();
         } catch (ParseError error) {
             // try to rescue our way out of this!
@@ -43,17 +50,27 @@ public class Parser {
     }
 
     private Stmt statement() {
-        if (match(FOR)) return forStatement();
-        if (match(IF)) return ifStatement();
-        if (match(PRINT)) return printStatement();
-        if (match(RETURN)) return returnStatement();
-        if (match(WHILE)) return whileStatement();
-        if (match(LEFT_BRACE)) return new Stmt.Block(block());
+        int line = peek().line;
+        if (match(FOR)) return at(line, forStatement());
+        if (match(IF)) return at(line, ifStatement());
+        if (match(PRINT)) return at(line, printStatement());
+        if (match(RETURN)) return at(line, returnStatement());
+        if (match(WHILE)) return at(line, whileStatement());
+        if (match(LEFT_BRACE)) return at(line, new Stmt.Block(block()));
 
-        return expressionStatement();
+        return at(line, expressionStatement());
+    }
+
+    /**
+     * Remembers the line the statement starts on, unless it already knows.
+     */
+    private static <S extends Stmt> S at(int line, S stmt) {
+        if (stmt.line == 0) stmt.line = line;
+        return stmt;
     }
 
     private Stmt forStatement() {
+        int line = previous().line;
         // TODO[error]: better error message
         consume(LEFT_PAREN, "Expecting '(' after for");
 
@@ -62,11 +79,15 @@ public class Parser {
             // initializer was omitted
             initializer = null;
         } else if (match(VAR)) {
-            initializer = varDeclaration();
+            initializer = at(line, varDeclaration());
         } else {
-            initializer = expressionStatement();
+            initializer = at(line, expressionStatement());
         }
 
+        // Everything from the condition on can assign to the counter or the bound.
+        int assignedBefore = assigned.size();
+        int callsBefore = calls;
+
         Expr condition = null;
         if (!check(SEMICOLON)) {
             condition = expression();
@@ -80,26 +101,78 @@ public class Parser {
         }
         consume(RIGHT_PAREN, "Expected ')' to end for condition");
 
+        int assignedInHeader = assigned.size() - assignedBefore;
+        int bodyStart = assigned.size();
         Stmt body = statement();
 
+        Stmt.For counted = countedLoop(initializer, condition, increment, body, assignedInHeader,
+                assigned.subList(bodyStart, assigned.size()), calls > callsBefore);
+        if (counted != null) return counted;
+
         // Desugar the for-loop into a while-loop
         // Work backwards from increment...
         if (increment != null) {
-            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
+            Stmt step = at(line, new Stmt.Expression(increment));
+            body = at(line, new Stmt.Block(Arrays.asList(body, step)));
         }
 
         // To condition...
         if (condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
+        body = at(line, new Stmt.While(condition, body));
 
         // To initializer... note, this creates a new scope ONLY if an initializer is provided.
         if (initializer != null) {
-            body = new Stmt.Block(Arrays.asList(initializer, body));
+            body = at(line, new Stmt.Block(Arrays.asList(initializer, body)));
         }
 
         return body;
     }
 
+    /**
+     * Recognizes loops like `for (var i = 0; i < n; i = i + 1)` whose body
+     * never assigns to i, so that they can run with a primitive counter.
+     * Nor may the condition assign anything, nor the increment anything but i.
+     * The bound is invariant if it's a literal, or a variable the loop never
+     * assigns to and can't change by calling something.
+     *
+     * @param assignedInHeader how many assignments the condition and increment have.
+     * @param callsInLoop whether the condition, increment, or body calls anything.
+     * @return the counted loop, or null if this is some other kind of loop.
+     */
+    private Stmt.For countedLoop(Stmt initializer, Expr condition, Expr increment, Stmt body,
+                                 int assignedInHeader, List<String> assignedInBody, boolean callsInLoop) {
+        if (!(initializer instanceof Stmt.Var counter) || counter.initializer == null) return null;
+        String name = counter.name.lexeme;
+
+        if (!(condition instanceof Expr.Binary test)) return null;
+        switch (test.operator.type) {
+            case LESS: case LESS_EQUAL: case GREATER: case GREATER_EQUAL: break;
+            default: return null;
+        }
+        if (!isVariable(test.left, name)) return null;
+
+        if (!(increment instanceof Expr.Assign step) || !step.name.lexeme.equals(name)) return null;
+        if (!(step.value instanceof Expr.Binary sum)) return null;
+        if (sum.operator.type != PLUS && sum.operator.type != MINUS) return null;
+        if (!isVariable(sum.left, name)) return null;
+        if (!(sum.right instanceof Expr.Literal literal) || !(literal.value instanceof Double)) return null;
+
+        // The step itself is the only assignment allowed outside the body.
+        if (assignedInHeader != 1) return null;
+        if (assignedInBody.contains(name)) return null;
+
+        boolean invariant = test.right instanceof Expr.Literal
+                || test.right instanceof Expr.Variable bound
+                        && !bound.name.lexeme.equals(name)
+                        && !assignedInBody.contains(bound.name.lexeme)
+                        && !callsInLoop;
+        return new Stmt.For(counter, test, step, body, invariant);
+    }
+
+    private static boolean isVariable(Expr expr, String name) {
+        return expr instanceof Expr.Variable variable && variable.name.lexeme.equals(name);
+    }
+
     private Stmt ifStatement() {
         // TODO[error]: better error message: mismatched delimiter error
         consume(LEFT_PAREN, "Expecting '(' after if");
@@ -192,7 +265,16 @@ public class Parser {
         }
 
         consume(SEMICOLON, "Expect ';' after variable declaration");
-        return new Stmt.Var(name, initializer);
+        return new Stmt.Var(name, initializer, false);
+    }
+
+    private Stmt constDeclaration() {
+        Token name = consume(IDENTIFIER, "Expect constant name");
+        consume(EQUAL, "Constants must be given a value");
+        Expr initializer = expression();
+
+        consume(SEMICOLON, "Expect ';' after constant declaration");
+        return new Stmt.Var(name, initializer, true);
     }
 
     private Stmt expressionStatement() {
@@ -225,7 +307,7 @@ public class Parser {
         List<Stmt> body = block();
         // TODO[error]: note: block() needs extra context to produce a better error message.
 
-        return new Stmt.Function(name, parameters, body);
+        return at(name.line, new Stmt.Function(name, parameters, body));
     }
 
     private Expr expression() {
@@ -241,6 +323,7 @@ public class Parser {
 
             if (expr instanceof Expr.Variable) {
                 Token name = ((Expr.Variable) expr).name;
+                assigned.add(name.lexeme);
                 return new Expr.Assign(name, value);
             } else if (expr instanceof Expr.Get get) {
                 // Transform that last field .get into a set:
@@ -367,6 +450,7 @@ public class Parser {
         // TODO[error]: better error message
         Token paren = consume(RIGHT_PAREN, "Expected ')' to end function call");
 
+        calls++;
         return new Expr.Call(callee, paren, arguments);
     }
 
@@ -472,7 +556,7 @@ public class Parser {
     // Error handling
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
@@ -486,6 +570,7 @@ public class Parser {
 
             switch (peek().type) {
                 case CLASS:
+                case CONST:
                 case FOR:
                 case FUN:
                 case IF:
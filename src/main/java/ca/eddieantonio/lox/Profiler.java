@@ -0,0 +1,239 @@
+package ca.eddieantonio.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Times every call to a Lox function, class, or native (jlox --profile).
+ *
+ * Each interpreter (i.e., each task) keeps its own CallStack, so calls
+ * are recorded without any locking, into a tree of who called whom. The
+ * trees are only added up when the report is printed:
+ *
+ *     self       time spent in the function itself, not in what it called
+ *     total      time from call to return, counted once for recursive calls
+ *     calls      how many times it was called
+ *
+ * Inlined calls (with -O) aren't calls anymore, so they aren't counted.
+ */
+class Profiler {
+    // Every stack's call tree. Guarded by this.
+    private final List<Node> roots = new ArrayList<>();
+
+    /**
+     * One function, called from one path of callers.
+     */
+    private static final class Node {
+        final Object key;
+        final String name;
+        final int line;
+        final Map<Object, Node> children = new HashMap<>();
+        long calls = 0;
+        long total = 0;
+        long self = 0;
+
+        Node(Object key, String name, int line) {
+            this.key = key;
+            this.name = name;
+            this.line = line;
+        }
+
+        Node child(LoxCallable function) {
+            Object key = key(function);
+            Node child = children.get(key);
+            if (child == null) {
+                child = new Node(key, name(function), line(function));
+                children.put(key, child);
+            }
+            return child;
+        }
+
+        String frame() {
+            return line > 0 ? name + ":" + line : name;
+        }
+
+        String location() {
+            return line > 0 ? name + " (line " + line + ")" : name;
+        }
+    }
+
+    /**
+     * The calls one interpreter is in the middle of.
+     */
+    final class CallStack {
+        private final Node root = new Node(null, "<script>", 0);
+        private Node[] nodes = new Node[64];
+        private long[] started = new long[64];
+        private long[] children = new long[64];
+        private int depth = 0;
+
+        private CallStack() {
+            synchronized (Profiler.this) {
+                roots.add(root);
+            }
+        }
+
+        /**
+         * @return a stack for another task.
+         */
+        CallStack fork() {
+            return new CallStack();
+        }
+
+        void enter(LoxCallable function) {
+            Node caller = depth == 0 ? root : nodes[depth - 1];
+            if (depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                started = Arrays.copyOf(started, depth * 2);
+                children = Arrays.copyOf(children, depth * 2);
+            }
+            nodes[depth] = caller.child(function);
+            children[depth] = 0;
+            started[depth] = System.nanoTime();
+            depth++;
+        }
+
+        void exit() {
+            long elapsed = System.nanoTime() - started[--depth];
+            Node node = nodes[depth];
+            nodes[depth] = null;
+            node.calls++;
+            node.total += elapsed;
+            node.self += elapsed - children[depth];
+            if (depth > 0) children[depth - 1] += elapsed;
+        }
+    }
+
+    /**
+     * Everything about one function, from all of its nodes.
+     */
+    private static final class Summary {
+        final Node first;
+        long calls = 0;
+        long total = 0;
+        long self = 0;
+        final Map<String, Long> callers = new LinkedHashMap<>();
+
+        Summary(Node first) {
+            this.first = first;
+        }
+    }
+
+    CallStack newStack() {
+        return new CallStack();
+    }
+
+    /**
+     * Prints each function's times, most self time first.
+     */
+    synchronized void print(PrintStream out) {
+        Map<Object, Summary> summaries = new HashMap<>();
+        for (Node root : roots) {
+            summarize(root, new HashSet<>(), summaries);
+        }
+
+        List<Summary> sorted = new ArrayList<>(summaries.values());
+        sorted.sort((a, b) -> Long.compare(b.self, a.self));
+
+        out.println("profile:");
+        out.printf("  %10s %10s %10s  %s%n", "self ms", "total ms", "calls", "function");
+        for (Summary summary : sorted) {
+            out.printf("  %10.3f %10.3f %10d  %s%n", millis(summary.self), millis(summary.total),
+                    summary.calls, summary.first.location());
+
+            StringBuilder callers = new StringBuilder();
+            for (Map.Entry<String, Long> caller : summary.callers.entrySet()) {
+                if (callers.length() > 0) callers.append(", ");
+                callers.append(caller.getKey()).append(" x").append(caller.getValue());
+            }
+            out.printf("  %10s %10s %10s    called from %s%n", "", "", "", callers);
+        }
+    }
+
+    /**
+     * Writes the self time of each path of calls as collapsed stacks, e.g.,
+     * for flamegraph.pl: `outer:1;inner:5 1234`, in microseconds.
+     */
+    synchronized void writeCollapsedStacks(Path path) throws IOException {
+        Map<String, Long> stacks = new TreeMap<>();
+        for (Node root : roots) {
+            for (Node child : root.children.values()) {
+                collapse(child, child.frame(), stacks);
+            }
+        }
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+                if (stack.getValue() > 0) writer.println(stack.getKey() + " " + stack.getValue());
+            }
+        }
+    }
+
+    private static void summarize(Node node, Set<Object> active, Map<Object, Summary> summaries) {
+        for (Node child : node.children.values()) {
+            Summary summary = summaries.computeIfAbsent(child.key, key -> new Summary(child));
+            summary.calls += child.calls;
+            summary.self += child.self;
+            summary.callers.merge(node.location(), child.calls, Long::sum);
+
+            // Time in a recursive call is already part of the outermost call's total.
+            boolean outermost = active.add(child.key);
+            if (outermost) summary.total += child.total;
+            summarize(child, active, summaries);
+            if (outermost) active.remove(child.key);
+        }
+    }
+
+    private static void collapse(Node node, String stack, Map<String, Long> stacks) {
+        stacks.merge(stack, node.self / 1000, Long::sum);
+        for (Node child : node.children.values()) {
+            collapse(child, stack + ";" + child.frame(), stacks);
+        }
+    }
+
+    /**
+     * @return what identifies the function, no matter which closure or bound method it is.
+     */
+    private static Object key(LoxCallable function) {
+        if (function instanceof LoxFunction loxFunction) return loxFunction.declaration;
+        if (function instanceof NativeFunction nativeFunction) return nativeFunction.name;
+        return function;
+    }
+
+    static String name(LoxCallable function) {
+        if (function instanceof LoxFunction loxFunction) return loxFunction.declaration.name.lexeme;
+        if (function instanceof LoxClass klass) return klass.name;
+        if (function instanceof NativeFunction nativeFunction) return nativeFunction.name;
+        if (function instanceof MemoizedFunction memoized) return "memoized " + name(memoized.function);
+        return function.toString();
+    }
+
+    /**
+     * @return the line the function was declared on, or 0 if it wasn't declared in Lox.
+     */
+    static int line(LoxCallable function) {
+        if (function instanceof LoxFunction loxFunction) return loxFunction.declaration.name.line;
+        if (function instanceof LoxClass klass) {
+            return klass.initializer == null ? 0 : line(klass.initializer);
+        }
+        if (function instanceof MemoizedFunction memoized) return line(memoized.function);
+        return 0;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,20 @@
+package ca.eddieantonio.lox;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A scanned, parsed, and resolved program, ready to run.
+ *
+ * Programs are immutable, so a single Program can be run by any number of
+ * LoxRuntimes, on any number of threads. Where each variable lives is on
+ * its node (Expr.depth), so nothing outlives the program but what it left
+ * behind, e.g., functions in the globals.
+ */
+public final class Program {
+    final List<Stmt> statements;
+
+    Program(List<Stmt> statements) {
+        this.statements = Collections.unmodifiableList(statements);
+    }
+}
@@ -0,0 +1,653 @@
+package ca.eddieantonio.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An on-disk cache of scanned, parsed, and resolved programs.
+ *
+ * Each entry holds the statements of a program plus the depths the Resolver
+ * assigned to its local variables, so that a cache hit can skip the Scanner,
+ * Parser and Resolver entirely. Entries are keyed by a hash of the source text
+ * and the cache VERSION.
+ */
+class ProgramCache {
+    // Bump this whenever the AST, the Resolver, or the encoding changes!
+    static final int VERSION = 5;
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+
+    // Node tags. 0 is reserved for null.
+    private static final byte NULL = 0;
+    private static final byte ASSIGN = 1, BINARY = 2, CALL = 3, GET = 4, GROUPING = 5, LITERAL = 6,
+            LOGICAL = 7, SET = 8, SUPER = 9, THIS = 10, UNARY = 11, VARIABLE = 12;
+    private static final byte BLOCK = 32, CLASS = 33, EXPRESSION = 34, FUNCTION = 35, IF = 36,
+            PRINT = 37, RETURN = 38, VAR = 39, WHILE = 40, FOR = 41;
+
+    // Literal value tags.
+    private static final byte NIL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final Path directory;
+
+    ProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Looks up a previously cached program for this source text.
+     *
+     * @return the program, or null if there is no usable entry.
+     */
+    Program load(String source) {
+        Path entry = entryFor(source);
+        if (!Files.isRegularFile(entry)) return null;
+
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(entry))) {
+            return new Program(new Decoder(new DataInputStream(input)).readProgram());
+        } catch (IOException | RuntimeException error) {
+            // A stale or corrupt entry is just a cache miss.
+            return null;
+        }
+    }
+
+    /**
+     * Saves a program that has been successfully parsed and resolved.
+     * Failing to write the cache is never an error.
+     */
+    void store(String source, Program program) {
+        Path entry = entryFor(source);
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            // Write then rename, so that concurrent runs never see half an entry.
+            temporary = Files.createTempFile(directory, "jlox", ".tmp");
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                new Encoder(new DataOutputStream(output)).writeProgram(program.statements);
+            }
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UncheckedIOException error) {
+            try {
+                if (temporary != null) Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Nothing else we can do.
+            }
+        }
+    }
+
+    private Path entryFor(String source) {
+        return directory.resolve(hash(source) + ".loxc");
+    }
+
+    /**
+     * @return a hex digest of the source text, salted by the cache VERSION.
+     */
+    static String hash(String source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("Every JVM must support SHA-256", e);
+        }
+
+        digest.update(("jlox " + VERSION + "\0").getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Writes a string of any length; writeUTF() can't write more than 64 KiB.
+     */
+    static void writeUtf8(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readUtf8(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Bad string length " + length);
+        // Reads as much as is there, so a bad length can't make a huge buffer.
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) throw new EOFException();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes statements in prefix order: a tag byte, followed by the fields of the node.
+     */
+    static class Encoder implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final DataOutputStream out;
+        // Identifiers are repeated a lot, so only write each distinct string once.
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Encoder(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeProgram(List<Stmt> statements) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeStatements(statements);
+        }
+
+        void writeStatements(List<? extends Stmt> statements) {
+            writeInt(statements.size());
+            for (Stmt statement : statements) {
+                write(statement);
+            }
+        }
+
+        void write(Stmt stmt) {
+            if (stmt == null) {
+                writeByte(NULL);
+            } else {
+                stmt.accept(this);
+                writeInt(stmt.line);
+            }
+        }
+
+        private void write(Expr expr) {
+            if (expr == null) {
+                writeByte(NULL);
+            } else {
+                expr.accept(this);
+            }
+        }
+
+        private void writeExpressions(List<Expr> expressions) {
+            writeInt(expressions.size());
+            for (Expr expr : expressions) {
+                write(expr);
+            }
+        }
+
+        private void writeToken(Token token) {
+            writeByte((byte) token.type.ordinal());
+            writeString(token.lexeme);
+            writeValue(token.literal);
+            writeInt(token.line);
+        }
+
+        private void writeTokens(List<Token> tokens) {
+            writeInt(tokens.size());
+            for (Token token : tokens) {
+                writeToken(token);
+            }
+        }
+
+        /**
+         * Writes where the Resolver said the variable lives, or -1 for globals.
+         */
+        private void writeDepth(Expr expr) {
+            writeInt(expr.depth);
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                writeByte(NIL);
+            } else if (value instanceof Boolean bool) {
+                writeByte(bool ? TRUE : FALSE);
+            } else if (value instanceof Double number) {
+                writeByte(NUMBER);
+                try {
+                    out.writeDouble(number);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (value instanceof String string) {
+                writeByte(STRING);
+                writeString(string);
+            } else {
+                throw new IllegalArgumentException("Cannot cache literal " + value);
+            }
+        }
+
+        private void writeString(String string) {
+            Integer index = strings.get(string);
+            if (index != null) {
+                writeInt(index);
+                return;
+            }
+
+            strings.put(string, strings.size());
+            writeInt(-1);
+            try {
+                writeUtf8(out, string);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeByte(byte b) {
+            try {
+                out.writeByte(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeInt(int i) {
+            try {
+                out.writeInt(i);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            writeByte(ASSIGN);
+            writeToken(expr.name);
+            write(expr.value);
+            writeDepth(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            writeByte(BINARY);
+            write(expr.left);
+            writeToken(expr.operator);
+            write(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            writeByte(CALL);
+            write(expr.callee);
+            writeToken(expr.paren);
+            writeExpressions(expr.arguments);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            writeByte(GET);
+            write(expr.object);
+            writeToken(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            writeByte(GROUPING);
+            write(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            writeByte(LITERAL);
+            writeValue(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            writeByte(LOGICAL);
+            write(expr.left);
+            writeToken(expr.operator);
+            write(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            writeByte(SET);
+            write(expr.object);
+            writeToken(expr.name);
+            write(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr) {
+            writeByte(SUPER);
+            writeToken(expr.keyword);
+            writeToken(expr.method);
+            writeDepth(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            writeByte(THIS);
+            writeToken(expr.keyword);
+            writeDepth(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            writeByte(UNARY);
+            writeToken(expr.operator);
+            write(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            writeByte(VARIABLE);
+            writeToken(expr.name);
+            writeDepth(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            writeByte(BLOCK);
+            writeStatements(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            writeByte(CLASS);
+            writeToken(stmt.name);
+            write(stmt.superclass);
+            writeStatements(stmt.methods);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            writeByte(EXPRESSION);
+            write(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitForStmt(Stmt.For stmt) {
+            writeByte(FOR);
+            write(stmt.counter);
+            write(stmt.condition);
+            write(stmt.increment);
+            write(stmt.body);
+            writeByte(stmt.invariant ? TRUE : FALSE);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            writeByte(FUNCTION);
+            writeToken(stmt.name);
+            writeTokens(stmt.params);
+            writeStatements(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            writeByte(IF);
+            write(stmt.condition);
+            write(stmt.thenBranch);
+            write(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            writeByte(PRINT);
+            write(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            writeByte(RETURN);
+            writeToken(stmt.keyword);
+            write(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            writeByte(VAR);
+            writeToken(stmt.name);
+            write(stmt.initializer);
+            writeByte(stmt.constant ? TRUE : FALSE);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            writeByte(WHILE);
+            write(stmt.condition);
+            write(stmt.body);
+            return null;
+        }
+    }
+
+    /**
+     * Reads back what the Encoder wrote. Each variable's depth is set on its
+     * node, exactly as the Resolver would have.
+     */
+    static class Decoder {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        Decoder(DataInputStream in) {
+            this.in = in;
+        }
+
+        List<Stmt> readProgram() throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a compatible cache entry");
+            }
+            return readStatements();
+        }
+
+        List<Stmt> readStatements() throws IOException {
+            int size = readSize();
+            List<Stmt> statements = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                statements.add(readStmt());
+            }
+            return statements;
+        }
+
+        private List<Stmt.Function> readFunctions() throws IOException {
+            int size = readSize();
+            List<Stmt.Function> functions = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                functions.add((Stmt.Function) readStmt());
+            }
+            return functions;
+        }
+
+        Stmt readStmt() throws IOException {
+            byte tag = in.readByte();
+            if (tag == NULL) return null;
+
+            Stmt stmt = readStmt(tag);
+            stmt.line = in.readInt();
+            return stmt;
+        }
+
+        private Stmt readStmt(byte tag) throws IOException {
+            switch (tag) {
+                case BLOCK:
+                    return new Stmt.Block(readStatements());
+                case CLASS: {
+                    Token name = readToken();
+                    Expr.Variable superclass = (Expr.Variable) readExpr();
+                    return new Stmt.Class(name, superclass, readFunctions());
+                }
+                case EXPRESSION:
+                    return new Stmt.Expression(readExpr());
+                case FOR: {
+                    Stmt.Var counter = (Stmt.Var) readStmt();
+                    Expr.Binary condition = (Expr.Binary) readExpr();
+                    Expr.Assign increment = (Expr.Assign) readExpr();
+                    Stmt body = readStmt();
+                    return new Stmt.For(counter, condition, increment, body, in.readByte() == TRUE);
+                }
+                case FUNCTION: {
+                    Token name = readToken();
+                    List<Token> params = readTokens();
+                    return new Stmt.Function(name, params, readStatements());
+                }
+                case IF: {
+                    Expr condition = readExpr();
+                    Stmt thenBranch = readStmt();
+                    return new Stmt.If(condition, thenBranch, readStmt());
+                }
+                case PRINT:
+                    return new Stmt.Print(readExpr());
+                case RETURN: {
+                    Token keyword = readToken();
+                    return new Stmt.Return(keyword, readExpr());
+                }
+                case VAR: {
+                    Token name = readToken();
+                    Expr initializer = readExpr();
+                    return new Stmt.Var(name, initializer, in.readByte() == TRUE);
+                }
+                case WHILE: {
+                    Expr condition = readExpr();
+                    return new Stmt.While(condition, readStmt());
+                }
+            }
+
+            throw new IOException("Unknown statement tag " + tag);
+        }
+
+        private Expr readExpr() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case ASSIGN: {
+                    Token name = readToken();
+                    return readDepth(new Expr.Assign(name, readExpr()));
+                }
+                case BINARY: {
+                    Expr left = readExpr();
+                    Token operator = readToken();
+                    return new Expr.Binary(left, operator, readExpr());
+                }
+                case CALL: {
+                    Expr callee = readExpr();
+                    Token paren = readToken();
+                    int size = readSize();
+                    List<Expr> arguments = new ArrayList<>();
+                    for (int i = 0; i < size; i++) {
+                        arguments.add(readExpr());
+                    }
+                    return new Expr.Call(callee, paren, arguments);
+                }
+                case GET: {
+                    Expr object = readExpr();
+                    return new Expr.Get(object, readToken());
+                }
+                case GROUPING:
+                    return new Expr.Grouping(readExpr());
+                case LITERAL:
+                    return new Expr.Literal(readValue());
+                case LOGICAL: {
+                    Expr left = readExpr();
+                    Token operator = readToken();
+                    return new Expr.Logical(left, operator, readExpr());
+                }
+                case SET: {
+                    Expr object = readExpr();
+                    Token name = readToken();
+                    return new Expr.Set(object, name, readExpr());
+                }
+                case SUPER: {
+                    Token keyword = readToken();
+                    return readDepth(new Expr.Super(keyword, readToken()));
+                }
+                case THIS:
+                    return readDepth(new Expr.This(readToken()));
+                case UNARY: {
+                    Token operator = readToken();
+                    return new Expr.Unary(operator, readExpr());
+                }
+                case VARIABLE:
+                    return readDepth(new Expr.Variable(readToken()));
+            }
+
+            throw new IOException("Unknown expression tag " + tag);
+        }
+
+        /**
+         * Reads how many of something follow. The lists they go in grow as
+         * they're read, so a bad size can't make a huge list.
+         */
+        private int readSize() throws IOException {
+            int size = in.readInt();
+            if (size < 0) throw new IOException("Bad size " + size);
+            return size;
+        }
+
+        private <E extends Expr> E readDepth(E expr) throws IOException {
+            expr.depth = in.readInt();
+            return expr;
+        }
+
+        private Token readToken() throws IOException {
+            TokenType type = TOKEN_TYPES[in.readByte()];
+            String lexeme = readString();
+            Object literal = readValue();
+            return new Token(type, lexeme, literal, in.readInt());
+        }
+
+        private List<Token> readTokens() throws IOException {
+            int size = readSize();
+            List<Token> tokens = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                tokens.add(readToken());
+            }
+            return tokens;
+        }
+
+        private Object readValue() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NIL: return null;
+                case FALSE: return false;
+                case TRUE: return true;
+                case NUMBER: return in.readDouble();
+                case STRING: return readString();
+            }
+
+            throw new IOException("Unknown value tag " + tag);
+        }
+
+        private String readString() throws IOException {
+            int index = in.readInt();
+            if (index >= 0) return strings.get(index);
+
+            // Interned, like the Scanner's names.
+            String string = readUtf8(in).intern();
+            strings.add(string);
+            return string;
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package ca.eddieantonio.lox;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
+    private final ErrorReporter reporter;
     private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    // The names declared with 'const' in each of the scopes.
+    private final Stack<Set<String>> constants = new Stack<>();
+    private final Set<String> globalConstants = new HashSet<>();
+    // Assignments to globals from inside functions, which might run after a constant is declared.
+    private final Map<String, Token> laterGlobalAssignments = new HashMap<>();
     // NOTE: this kind of violates the single-responsibility principle
     // NOTE: I have no idea what specifically I was thinking about when I wrote that...
     private FunctionType currentFunction = FunctionType.NONE;
@@ -26,8 +33,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         SUBCLASS
     }
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    Resolver(ErrorReporter reporter) {
+        this(reporter, Set.of());
+    }
+
+    /**
+     * @param globalConstants the globals earlier programs defined with 'const'.
+     */
+    Resolver(ErrorReporter reporter, Set<String> globalConstants) {
+        this.reporter = reporter;
+        this.globalConstants.addAll(globalConstants);
     }
 
     void resolve(List<Stmt> statements) {
@@ -46,20 +61,27 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     private void beginScope() {
         scopes.push(new HashMap<String, Boolean>());
+        constants.push(new HashSet<>());
     }
 
     private void endScope() {
         scopes.pop();
+        constants.pop();
     }
 
     private void declare(Token name) {
-        if (scopes.isEmpty()) return;
+        if (scopes.isEmpty()) {
+            if (globalConstants.contains(name.lexeme)) {
+                reporter.error(name, "Already defined a constant with this name");
+            }
+            return;
+        }
 
         Map<String, Boolean> scope = scopes.peek();
         if (scope.containsKey(name.lexeme)) {
             // TODO[error]: better error message (needs to point at previous definition)
             // TODO[error]: also, make it point out the scope.
-            Lox.error(name,
+            reporter.error(name,
         "Already defined a variable with this name in scope");
         }
         scope.put(name.lexeme, false);
@@ -70,13 +92,39 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         scopes.peek().put(name.lexeme, true);
     }
 
+    private void declareConstant(Token name) {
+        if (!scopes.isEmpty()) {
+            constants.peek().add(name.lexeme);
+            return;
+        }
+
+        Token assignment = laterGlobalAssignments.get(name.lexeme);
+        if (assignment != null) {
+            reporter.error(assignment, "Can't assign to a constant");
+        }
+        globalConstants.add(name.lexeme);
+    }
+
+    private void checkNotConstant(Expr.Assign expr) {
+        String name = expr.name.lexeme;
+        if (expr.depth >= 0) {
+            if (constants.get(constants.size() - 1 - expr.depth).contains(name)) {
+                reporter.error(expr.name, "Can't assign to a constant");
+            }
+        } else if (globalConstants.contains(name)) {
+            reporter.error(expr.name, "Can't assign to a constant");
+        } else if (currentFunction != FunctionType.NONE) {
+            laterGlobalAssignments.putIfAbsent(name, expr.name);
+        }
+    }
+
     private void resolveLocal(Expr expr, Token name) {
         // Walk up through all the scopes STATICALLY, from the innermost,
         // up to the outermost scope.
         for (int i = scopes.size() - 1; i >= 0; i--) {
             if (scopes.get(i).containsKey(name.lexeme)) {
                 // tell the interpreter how many scopes it has to walk back up.
-                interpreter.resolve(expr, scopes.size() - 1 - i);
+                expr.depth = scopes.size() - 1 - i;
                 return;
             }
         }
@@ -119,7 +167,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         define(stmt.name);
         if (classInheritsFromItself(stmt)) {
             // TODO[error]: better error message
-            Lox.error(stmt.superclass.name, "A class cannot inherit from itself.");
+            reporter.error(stmt.superclass.name, "A class cannot inherit from itself.");
         }
 
         if (stmt.superclass != null) {
@@ -167,6 +215,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             resolve(stmt.initializer);
         }
         define(stmt.name);
+        if (stmt.constant) declareConstant(stmt.name);
         return null;
     }
 
@@ -174,6 +223,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
         resolveLocal(expr, expr.name);
+        checkNotConstant(expr);
         return null;
     }
 
@@ -234,11 +284,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             // TODO[research]:
             //  - taxonomy of errors: think, this is using a language feature outside of its correct context.
             //    what other errors operate like that?
-            Lox.error(expr.keyword, "Tried using super outside of a class");
+            reporter.error(expr.keyword, "Tried using super outside of a class");
             return null;
         } else if (currentClass == ClassType.CLASS) {
             // TODO[error]: better error message
-            Lox.error(expr.keyword, "Tried using super, but this class does inherit from a super class");
+            reporter.error(expr.keyword, "Tried using super, but this class does inherit from a super class");
             return null;
         }
 
@@ -249,7 +299,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitThisExpr(Expr.This expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Can't use 'this' outside of a class");
+            reporter.error(expr.keyword, "Can't use 'this' outside of a class");
             return null;
         }
 
@@ -267,7 +317,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitVariableExpr(Expr.Variable expr) {
         if (!scopes.isEmpty() && declaredButNotDefined(expr.name)) {
             // TODO[error]: better error message
-            Lox.error(expr.name,
+            reporter.error(expr.name,
                     "Can't read local variable in its own initializer");
         }
 
@@ -285,6 +335,18 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // The counter gets a scope of its own, which the body runs in.
+        beginScope();
+        resolve(stmt.counter);
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        resolve(stmt.increment);
+        endScope();
+        return null;
+    }
+
     @Override
     public Void visitIfStmt(Stmt.If stmt) {
         resolve(stmt.condition);
@@ -303,13 +365,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE) {
             // TODO[error]: better error message. I have absolutely no idea how to make this better:
-            Lox.error(stmt.keyword, "Can't return from top-level code");
+            reporter.error(stmt.keyword, "Can't return from top-level code");
         }
 
         if (stmt.value != null) {
             if (currentFunction == FunctionType.INITIALIZER) {
                 // TODO[error]: better error message. I also don't know how to improve this, but it should be improved!
-                Lox.error(stmt.keyword, "Can't return a value from an initializer");
+                reporter.error(stmt.keyword, "Can't return a value from an initializer");
             }
 
             resolve(stmt.value);
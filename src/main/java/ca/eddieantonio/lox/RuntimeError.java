@@ -7,4 +7,11 @@ public class RuntimeError extends RuntimeException {
         super(message);
         this.token = token;
     }
+
+    /**
+     * For errors in native functions, which don't know where they were called from.
+     */
+    public RuntimeError(String message) {
+        this(null, message);
+    }
 }
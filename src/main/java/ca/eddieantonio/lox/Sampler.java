@@ -0,0 +1,177 @@
+package ca.eddieantonio.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Finds out what Lox code is running by looking, every so often (jlox --sample).
+ *
+ * Each interpreter keeps a ShadowStack of the Lox functions it's in, and the
+ * line each of them is on. Keeping it is cheap: a couple of array writes per
+ * call, and one per statement. A background thread looks at the stacks that
+ * are running Lox code, and counts how often it saw each path of calls, and
+ * each line. It reads the stacks without locking, so a sample might be a
+ * little out of date, but that's fine for a statistical profile.
+ */
+class Sampler {
+    private static final int MAXIMUM_HOT_LINES = 20;
+    // Every 100 µs; any faster, and the thread can't wake up that often anyway.
+    static final int MAXIMUM_RATE = 10_000;
+
+    private final long interval;
+    private final Set<ShadowStack> running = ConcurrentHashMap.newKeySet();
+    private final Thread thread;
+    private volatile boolean stopped = false;
+    // Only the sampling thread touches these until it has stopped.
+    private final Map<String, Long> stacks = new HashMap<>();
+    private final Map<String, Long> lines = new HashMap<>();
+    private long samples = 0;
+
+    /**
+     * The Lox functions an interpreter is in, innermost last.
+     */
+    final class ShadowStack {
+        // Slot 0 is the top level of the script, which forked tasks don't have.
+        private LoxCallable[] functions = new LoxCallable[64];
+        private int[] lines = new int[64];
+        private int depth = 0;
+        private final boolean topLevel;
+
+        private ShadowStack(boolean topLevel) {
+            this.topLevel = topLevel;
+            if (topLevel) running.add(this);
+        }
+
+        /**
+         * @return a stack for another task, which is only sampled while it's in a function.
+         */
+        ShadowStack fork() {
+            return new ShadowStack(false);
+        }
+
+        void enter(LoxCallable function) {
+            if (depth == 0 && !topLevel) running.add(this);
+            int next = depth + 1;
+            if (next == functions.length) {
+                functions = Arrays.copyOf(functions, next * 2);
+                lines = Arrays.copyOf(lines, next * 2);
+            }
+            functions[next] = function;
+            lines[next] = Profiler.line(function);
+            depth = next;
+        }
+
+        void exit() {
+            functions[depth] = null;
+            depth--;
+            if (depth == 0 && !topLevel) running.remove(this);
+        }
+
+        /**
+         * Notes that the current function has reached the line.
+         */
+        void reached(int line) {
+            lines[depth] = line;
+        }
+
+        private void sample() {
+            // Read each field once, since the interpreter keeps changing them.
+            LoxCallable[] functions = this.functions;
+            int[] lines = this.lines;
+            int depth = Math.min(this.depth, Math.min(functions.length, lines.length) - 1);
+            // Not running a script (yet).
+            if (depth == 0 && lines[0] == 0) return;
+
+            StringBuilder stack = new StringBuilder();
+            String frame = null;
+            for (int i = topLevel ? 0 : 1; i <= depth; i++) {
+                LoxCallable function = functions[i];
+                if (i > 0 && function == null) break;
+
+                frame = (i == 0 ? "<script>" : Profiler.name(function)) + ":" + lines[i];
+                if (stack.length() > 0) stack.append(';');
+                stack.append(frame);
+            }
+            if (frame == null) return;
+
+            stacks.merge(stack.toString(), 1L, Long::sum);
+            Sampler.this.lines.merge(frame, 1L, Long::sum);
+            samples++;
+        }
+    }
+
+    /**
+     * @param rate how many times a second to sample, from 1 to MAXIMUM_RATE
+     */
+    Sampler(int rate) {
+        if (rate < 1 || rate > MAXIMUM_RATE) throw new IllegalArgumentException("rate must be from 1 to " + MAXIMUM_RATE);
+        this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.thread = new Thread(this::run, "lox-sampler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    ShadowStack newStack() {
+        return new ShadowStack(true);
+    }
+
+    private void run() {
+        while (!stopped) {
+            LockSupport.parkNanos(interval);
+            for (ShadowStack stack : running) {
+                stack.sample();
+            }
+        }
+    }
+
+    /**
+     * Stops sampling, so that the results can be printed.
+     */
+    void stop() {
+        stopped = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints the lines that were running most often.
+     */
+    void print(PrintStream out) {
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(lines.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        out.printf("samples: %d, every %.3f ms%n", samples, interval / 1_000_000.0);
+        out.printf("  %10s %7s  %s%n", "samples", "%", "function:line");
+        for (Map.Entry<String, Long> line : sorted.subList(0, Math.min(MAXIMUM_HOT_LINES, sorted.size()))) {
+            out.printf("  %10d %6.1f%%  %s%n", line.getValue(), 100.0 * line.getValue() / samples, line.getKey());
+        }
+    }
+
+    /**
+     * Writes how often each path of calls was seen as collapsed stacks, e.g., for flamegraph.pl.
+     */
+    void writeCollapsedStacks(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, Long> stack : new TreeMap<>(stacks).entrySet()) {
+                writer.println(stack.getKey() + " " + stack.getValue());
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import static ca.eddieantonio.lox.TokenType.*;
 
 class Scanner {
     private final String source;
+    private final ErrorReporter reporter;
     private final List<Token> tokens = new ArrayList<>();
     // Offset into the source where the current token starts
     private int start = 0;
@@ -22,6 +23,7 @@ class Scanner {
         keywords = new HashMap<>();
         keywords.put("and", AND);
         keywords.put("class", CLASS);
+        keywords.put("const", CONST);
         keywords.put("else", ELSE);
         keywords.put("false", FALSE);
         keywords.put("for", FOR);
@@ -38,8 +40,9 @@ class Scanner {
         keywords.put("while", WHILE);
     }
 
-    public Scanner(String source) {
+    public Scanner(String source, ErrorReporter reporter) {
         this.source = source;
+        this.reporter = reporter;
     }
 
     List<Token> scanTokens() {
@@ -116,7 +119,7 @@ class Scanner {
                     identifier();
                 } else {
                     // TODO: [Error] indicate which character is unexpected and offer a solution.
-                    Lox.error(line, "Unexpected character.");
+                    reporter.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -129,7 +132,7 @@ class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
 
         }
@@ -169,7 +172,8 @@ class Scanner {
             // Not a keyword, just a regular identifier.
             type = IDENTIFIER;
 
-        addToken(type);
+        // Interned, so that Variables can usually compare names by identity.
+        tokens.add(new Token(type, text.intern(), null, line));
      }
 
     /**
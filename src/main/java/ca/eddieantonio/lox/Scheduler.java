@@ -0,0 +1,113 @@
+package ca.eddieantonio.lox;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs the tasks started by spawn().
+ *
+ * Every task gets its own thread (a virtual thread, when the JVM has them), but
+ * only one task executes Lox code at a time: a task must hold the interpreter
+ * lock to run. A task gives the lock up whenever it blocks (e.g., waiting on a
+ * channel), and every so often while running, so that the other tasks get a
+ * turn. This makes every variable and field access atomic: a task always sees
+ * the last value written by any task. A read-modify-write like `x = x + 1` is
+ * NOT atomic if another task could run in between.
+ */
+class Scheduler {
+    // How many statements a task may run before letting another task have a turn.
+    static final int YIELD_INTERVAL = 1024;
+
+    // Fair, so that yield() actually hands the lock to a waiting task.
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition allFinished = lock.newCondition();
+    // Guarded by lock.
+    private int running = 0;
+    // Nothing needs to yield until the first spawn().
+    private volatile boolean concurrent = false;
+
+    void enter() {
+        lock.lock();
+    }
+
+    void exit() {
+        lock.unlock();
+    }
+
+    boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Starts running the task as soon as it can get the interpreter lock.
+     */
+    void spawn(Runnable task) {
+        running++;
+        concurrent = true;
+        Thread thread = TaskThreads.FACTORY.newThread(() -> {
+            enter();
+            try {
+                task.run();
+            } finally {
+                if (--running == 0) allFinished.signalAll();
+                exit();
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * Waits (without the interpreter lock) until every spawned task has finished.
+     */
+    void awaitAll() {
+        while (running > 0) {
+            allFinished.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Lets any waiting task run.
+     */
+    void yieldTurn() {
+        if (!lock.hasQueuedThreads()) return;
+        blocking(() -> null);
+    }
+
+    /**
+     * Runs something that may block without holding the interpreter lock.
+     */
+    <T> T blocking(Supplier<T> operation) {
+        int holds = lock.getHoldCount();
+        for (int i = 0; i < holds; i++) lock.unlock();
+        try {
+            return operation.get();
+        } finally {
+            for (int i = 0; i < holds; i++) lock.lock();
+        }
+    }
+
+    /**
+     * Lazily figures out how to make threads, the first time something is spawned.
+     */
+    private static class TaskThreads {
+        static final ThreadFactory FACTORY = create();
+
+        private static ThreadFactory create() {
+            try {
+                // Java 21+: Thread.ofVirtual().factory()
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                        .getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                // No virtual threads: fall back to platform threads.
+                return runnable -> {
+                    Thread thread = new Thread(runnable, "lox-task");
+                    thread.setDaemon(true);
+                    return thread;
+                };
+            }
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package ca.eddieantonio.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves and restores everything reachable from the interpreter's globals.
+ *
+ * This lets a big prelude run once, and then every later run can start from
+ * the state the prelude left behind. Environments, classes, functions (with
+ * their closures), instances, arrays, and memoized functions (without their
+ * results) are all saved; native functions are saved by name and reconnected
+ * to the natives of the restoring interpreter.
+ *
+ * The object graph can have cycles, but the objects' constructors cannot: an
+ * Environment needs its enclosing Environment, a LoxFunction needs its closure,
+ * a LoxClass needs its superclass and methods, and a LoxInstance needs its
+ * class. So the file first lists every object's "shell" in an order where its
+ * constructor arguments come first, and then fills in variables and fields.
+ */
+class Snapshot {
+    private static final int MAGIC = 0x4c4f5853; // "LOXS"
+    private static final int VERSION = 3;
+
+    // Object tags.
+    private static final byte ENVIRONMENT = 1, FUNCTION = 2, CLASS = 3, INSTANCE = 4, ARRAY = 5,
+            MEMOIZED = 6;
+
+    // Value tags.
+    private static final byte NIL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4, REFERENCE = 5,
+            NATIVE = 6;
+
+    static void save(Interpreter interpreter, Path path) throws IOException {
+        // Write then rename, so that a failed save never clobbers a good snapshot,
+        // and concurrent saves never write to the same file.
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), "jlox", ".tmp");
+        try {
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                new Writer(new DataOutputStream(output), interpreter).write();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UncheckedIOException error) {
+            Files.deleteIfExists(temporary);
+            throw error instanceof UncheckedIOException unchecked ? unchecked.getCause() : (IOException) error;
+        }
+    }
+
+    /**
+     * @throws IOException if the snapshot can't be read, or is corrupt.
+     */
+    static void restore(Interpreter interpreter, Path path) throws IOException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            new Reader(new DataInputStream(input), interpreter, Files.size(path)).read();
+        } catch (FileSystemException e) {
+            // It already says which file.
+            throw e;
+        } catch (IOException e) {
+            throw new IOException(path + ": " + (e instanceof EOFException ? "Cut short" : e.getMessage()), e);
+        }
+    }
+
+    private static class Writer {
+        private final DataOutputStream out;
+        private final Interpreter interpreter;
+        private final ProgramCache.Encoder declarations;
+        private final Map<Stmt.Function, Integer> declarationIndices = new IdentityHashMap<>();
+        private final Map<Object, Integer> indices = new IdentityHashMap<>();
+        private final List<Object> objects = new ArrayList<>();
+
+        Writer(DataOutputStream out, Interpreter interpreter) {
+            this.out = out;
+            this.interpreter = interpreter;
+            this.declarations = new ProgramCache.Encoder(out);
+        }
+
+        void write() throws IOException {
+            // The globals are always object 0.
+            collect(interpreter.globals);
+            // Find everything else reachable from the objects found so far.
+            // Note: objects.size() grows as we go!
+            for (int i = 0; i < objects.size(); i++) {
+                Object object = objects.get(i);
+                if (object instanceof Environment environment) {
+                    environment.values.values().forEach(this::collect);
+                } else if (object instanceof LoxInstance instance) {
+                    instance.fields.values().forEach(this::collect);
+                } else if (object instanceof LoxArray array) {
+                    for (Object element : array.elements) collect(element);
+                }
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ProgramCache.VERSION);
+
+            out.writeInt(objects.size());
+            for (Object object : objects) {
+                writeShell(object);
+            }
+
+            for (Object object : objects) {
+                if (object instanceof Environment environment) {
+                    writeVariables(environment.values);
+                } else if (object instanceof LoxInstance instance) {
+                    writeVariables(instance.fields);
+                } else if (object instanceof LoxArray array) {
+                    for (Object element : array.elements) writeValue(element);
+                }
+            }
+
+            // Which globals are constants, so they stay that way.
+            List<String> constants = new ArrayList<>(interpreter.globals.constants());
+            out.writeInt(constants.size());
+            for (String name : constants) {
+                ProgramCache.writeUtf8(out, name);
+            }
+        }
+
+        /**
+         * Numbers an object, after first numbering everything its constructor needs.
+         */
+        private void collect(Object value) {
+            if (indices.containsKey(value)) return;
+
+            if (value instanceof Environment environment) {
+                if (environment.enclosing != null) collect(environment.enclosing);
+            } else if (value instanceof LoxFunction function) {
+                collect(function.closure);
+            } else if (value instanceof LoxClass klass) {
+                if (klass.superclass != null) collect(klass.superclass);
+                klass.methods.values().forEach(this::collect);
+            } else if (value instanceof LoxInstance instance) {
+                collect(instance.klass);
+            } else if (value instanceof MemoizedFunction memoized) {
+                collect(memoized.function);
+            } else if (value instanceof LoxArray) {
+                // Arrays have no dependencies.
+            } else {
+                // Not an object; it is written out directly.
+                return;
+            }
+
+            indices.put(value, objects.size());
+            objects.add(value);
+        }
+
+        private void writeShell(Object object) throws IOException {
+            if (object instanceof Environment environment) {
+                out.writeByte(ENVIRONMENT);
+                out.writeInt(environment.enclosing == null ? -1 : indices.get(environment.enclosing));
+            } else if (object instanceof LoxFunction function) {
+                out.writeByte(FUNCTION);
+                writeDeclaration(function.declaration);
+                out.writeInt(indices.get(function.closure));
+                out.writeBoolean(function.isInitializer);
+            } else if (object instanceof LoxClass klass) {
+                out.writeByte(CLASS);
+                ProgramCache.writeUtf8(out, klass.name);
+                out.writeInt(klass.superclass == null ? -1 : indices.get(klass.superclass));
+                out.writeInt(klass.methods.size());
+                for (Map.Entry<String, LoxFunction> method : klass.methods.entrySet()) {
+                    ProgramCache.writeUtf8(out, method.getKey());
+                    out.writeInt(indices.get(method.getValue()));
+                }
+            } else if (object instanceof LoxInstance instance) {
+                out.writeByte(INSTANCE);
+                out.writeInt(indices.get(instance.klass));
+            } else if (object instanceof MemoizedFunction memoized) {
+                out.writeByte(MEMOIZED);
+                writeValue(memoized.function);
+                out.writeInt(memoized.capacity);
+            } else {
+                LoxArray array = (LoxArray) object;
+                out.writeByte(ARRAY);
+                out.writeInt(array.elements.length);
+            }
+        }
+
+        /**
+         * Writes a function's code once, no matter how many closures share it.
+         */
+        private void writeDeclaration(Stmt.Function declaration) throws IOException {
+            Integer index = declarationIndices.get(declaration);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+
+            declarationIndices.put(declaration, declarationIndices.size());
+            out.writeInt(-1);
+            declarations.write(declaration);
+        }
+
+        private void writeVariables(Map<String, Object> variables) throws IOException {
+            out.writeInt(variables.size());
+            for (Map.Entry<String, Object> variable : variables.entrySet()) {
+                ProgramCache.writeUtf8(out, variable.getKey());
+                try {
+                    writeValue(variable.getValue());
+                } catch (UnsaveableException e) {
+                    // Say where it is.
+                    throw new UnsaveableException(variable.getValue(), variable.getKey());
+                }
+            }
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NIL);
+            } else if (value instanceof Boolean bool) {
+                out.writeByte(bool ? TRUE : FALSE);
+            } else if (value instanceof Double number) {
+                out.writeByte(NUMBER);
+                out.writeDouble(number);
+            } else if (value instanceof String string) {
+                out.writeByte(STRING);
+                ProgramCache.writeUtf8(out, string);
+            } else if (value instanceof NativeFunction function
+                    && interpreter.natives.get(function.name) == function) {
+                out.writeByte(NATIVE);
+                ProgramCache.writeUtf8(out, function.name);
+            } else if (indices.containsKey(value)) {
+                out.writeByte(REFERENCE);
+                out.writeInt(indices.get(value));
+            } else {
+                throw new UnsaveableException(value, null);
+            }
+        }
+    }
+
+    /**
+     * A value with no snapshot format, e.g., a channel or a Java object.
+     */
+    private static class UnsaveableException extends IOException {
+        UnsaveableException(Object value, String variable) {
+            super("Cannot save " + value + (variable == null ? "" : " (in '" + variable + "')") + " in a snapshot");
+        }
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+        private final Interpreter interpreter;
+        private final ProgramCache.Decoder declarations;
+        // How many bytes the snapshot has, so that no count in it can be bigger.
+        private final long size;
+        private final List<Stmt.Function> declarationTable = new ArrayList<>();
+        private final List<Object> objects = new ArrayList<>();
+
+        Reader(DataInputStream in, Interpreter interpreter, long size) {
+            this.in = in;
+            this.interpreter = interpreter;
+            this.size = size;
+            this.declarations = new ProgramCache.Decoder(in);
+        }
+
+        void read() throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != ProgramCache.VERSION) {
+                throw new IOException("Not a compatible snapshot");
+            }
+
+            int count = readCount("object count");
+            for (int i = 0; i < count; i++) {
+                objects.add(readShell(i));
+            }
+
+            for (Object object : objects) {
+                if (object instanceof Environment environment) {
+                    readVariables(environment.values);
+                } else if (object instanceof LoxInstance instance) {
+                    readVariables(instance.fields);
+                } else if (object instanceof LoxArray array) {
+                    for (int i = 0; i < array.elements.length; i++) {
+                        array.elements[i] = readValue();
+                    }
+                }
+            }
+
+            Environment globals = interpreter.globals;
+            int constants = readCount("constant count");
+            for (int i = 0; i < constants; i++) {
+                String name = ProgramCache.readUtf8(in).intern();
+                globals.defineConstant(name, globals.values.get(name));
+            }
+        }
+
+        private Object readShell(int index) throws IOException {
+            byte tag = in.readByte();
+            // Restore the globals in place, next to this interpreter's natives.
+            if (index == 0) {
+                if (tag != ENVIRONMENT || in.readInt() != -1) throw new IOException("The first object isn't the globals");
+                return interpreter.globals;
+            }
+
+            switch (tag) {
+                case ENVIRONMENT:
+                    return new Environment(readObject(Environment.class));
+                case FUNCTION: {
+                    Stmt.Function declaration = readDeclaration();
+                    Environment closure = readObject(Environment.class);
+                    return new LoxFunction(declaration, closure, in.readBoolean());
+                }
+                case CLASS: {
+                    String name = ProgramCache.readUtf8(in);
+                    int superclass = in.readInt();
+                    int size = readCount("method count");
+                    Map<String, LoxFunction> methods = new HashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        String methodName = ProgramCache.readUtf8(in);
+                        methods.put(methodName, readObject(LoxFunction.class));
+                    }
+                    return new LoxClass(name, superclass < 0 ? null : object(superclass, LoxClass.class), methods);
+                }
+                case INSTANCE:
+                    return new LoxInstance(readObject(LoxClass.class));
+                case ARRAY:
+                    // Each element takes at least a byte, so this can't make a huge array.
+                    return new LoxArray(readCount("array length"), null);
+                case MEMOIZED: {
+                    if (!(readValue() instanceof LoxCallable function)) {
+                        throw new IOException("A memoized function that isn't a function");
+                    }
+                    int capacity = in.readInt();
+                    if (capacity < 1) throw new IOException("Bad memoized function capacity " + capacity);
+                    return new MemoizedFunction(function, capacity);
+                }
+            }
+
+            throw new IOException("Unknown object tag " + tag);
+        }
+
+        private <T> T readObject(Class<T> kind) throws IOException {
+            return object(in.readInt(), kind);
+        }
+
+        /**
+         * @return an object read so far, as long as it's the given kind.
+         */
+        private <T> T object(int index, Class<T> kind) throws IOException {
+            if (index < 0 || index >= objects.size() || !kind.isInstance(objects.get(index))) {
+                throw new IOException("Bad reference to object " + index);
+            }
+            return kind.cast(objects.get(index));
+        }
+
+        /**
+         * @return a count, which can't be negative, or more than there are bytes left.
+         */
+        private int readCount(String what) throws IOException {
+            int count = in.readInt();
+            if (count < 0 || count > size) throw new IOException("Bad " + what + " " + count);
+            return count;
+        }
+
+        private Stmt.Function readDeclaration() throws IOException {
+            int index = in.readInt();
+            if (index >= declarationTable.size()) throw new IOException("Bad reference to function " + index);
+            if (index >= 0) return declarationTable.get(index);
+
+            Stmt declaration;
+            try {
+                declaration = declarations.readStmt();
+            } catch (RuntimeException e) {
+                // E.g., a node where there can't be one; the program cache treats these as misses.
+                throw new IOException("Bad function declaration", e);
+            }
+            if (!(declaration instanceof Stmt.Function function)) throw new IOException("Bad function declaration");
+            declarationTable.add(function);
+            return function;
+        }
+
+        private void readVariables(Map<String, Object> variables) throws IOException {
+            int size = readCount("variable count");
+            for (int i = 0; i < size; i++) {
+                String name = ProgramCache.readUtf8(in).intern();
+                variables.put(name, readValue());
+            }
+        }
+
+        private Object readValue() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NIL: return null;
+                case FALSE: return false;
+                case TRUE: return true;
+                case NUMBER: return in.readDouble();
+                case STRING: return ProgramCache.readUtf8(in);
+                case REFERENCE: return readObject(Object.class);
+                case NATIVE: {
+                    String name = ProgramCache.readUtf8(in);
+                    NativeFunction function = interpreter.natives.get(name);
+                    if (function == null) throw new IOException("Unknown native function '" + name + "'");
+                    return function;
+                }
+            }
+
+            throw new IOException("Unknown value tag " + tag);
+        }
+    }
+}
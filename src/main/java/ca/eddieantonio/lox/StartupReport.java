@@ -0,0 +1,61 @@
+package ca.eddieantonio.lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+
+/**
+ * Reports how long jlox took to start, compared to how long it took to run the script.
+ *
+ * Enabled with --startup-report. The management beans are only loaded when the
+ * report is printed, so they don't get counted against startup.
+ */
+class StartupReport {
+    private final long mainEntered;
+    private final long mainEnteredMillis;
+    private long scriptStarted;
+    private long scriptFinished;
+
+    /**
+     * @param mainEntered System.nanoTime() at the very start of main()
+     */
+    StartupReport(long mainEntered) {
+        this.mainEntered = mainEntered;
+        this.mainEnteredMillis = System.currentTimeMillis() - (System.nanoTime() - mainEntered) / 1_000_000;
+    }
+
+    void scriptStarted() {
+        scriptStarted = System.nanoTime();
+    }
+
+    void scriptFinished() {
+        scriptFinished = System.nanoTime();
+    }
+
+    void print(PrintStream out) {
+        long now = System.nanoTime();
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        int classesLoaded = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+        // HotSpot says "sharing" here when a CDS archive was mapped.
+        String sharing = System.getProperty("java.vm.info", "").contains("sharing") ? "on" : "off";
+        for (String argument : runtime.getInputArguments()) {
+            if (argument.startsWith("-XX:SharedArchiveFile=")) {
+                sharing += " (" + argument.substring("-XX:SharedArchiveFile=".length()) + ")";
+            }
+        }
+
+        out.println("startup report:");
+        out.printf("  JVM start to main:    %8d ms%n", mainEnteredMillis - runtime.getStartTime());
+        if (scriptFinished != 0) {
+            out.printf("  main to script:       %8.3f ms%n", millis(scriptStarted - mainEntered));
+            out.printf("  script:               %8.3f ms%n", millis(scriptFinished - scriptStarted));
+        }
+        out.printf("  main to exit:         %8.3f ms%n", millis(now - mainEntered));
+        out.printf("  classes loaded:       %8d%n", classesLoaded);
+        out.printf("  class data sharing:   %s%n", sharing);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,210 @@
+package ca.eddieantonio.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts what a script did, and how long each phase took (jlox --stats).
+ *
+ * Like the Profiler, every interpreter (i.e., every task and parallel
+ * worker) counts into its own Counters, without locking, and they're only
+ * added up for the report.
+ */
+class Stats {
+    private long scanNanos = 0;
+    private long parseNanos = 0;
+    private long resolveNanos = 0;
+    private long interpretNanos = 0;
+    private long tokens = 0;
+    private long statements = 0;
+    private long expressions = 0;
+    // Guarded by this.
+    private final List<Counters> counters = new ArrayList<>();
+
+    /**
+     * What one interpreter did.
+     */
+    final class Counters {
+        long statementsExecuted = 0;
+        long calls = 0;
+        long environments = 0;
+        long instances = 0;
+        int peakCallDepth = 0;
+
+        private Counters(boolean registered) {
+            if (!registered) return;
+            synchronized (Stats.this) {
+                counters.add(this);
+            }
+        }
+
+        /**
+         * @return counters for another task.
+         */
+        Counters fork() {
+            return new Counters(true);
+        }
+
+        void called(int depth) {
+            calls++;
+            if (depth > peakCallDepth) peakCallDepth = depth;
+        }
+    }
+
+    Counters newCounters() {
+        return new Counters(true);
+    }
+
+    void compiled(int tokens, long scanNanos, long parseNanos, long resolveNanos) {
+        this.tokens += tokens;
+        this.scanNanos += scanNanos;
+        this.parseNanos += parseNanos;
+        this.resolveNanos += resolveNanos;
+    }
+
+    void executed(Program program, long nanos) {
+        interpretNanos += nanos;
+        for (Stmt statement : program.statements) {
+            count(statement);
+        }
+    }
+
+    void print(PrintStream out) {
+        Counters total = total();
+        out.println("stats:");
+        out.printf("  scan:                 %10.3f ms%n", millis(scanNanos));
+        out.printf("  parse:                %10.3f ms%n", millis(parseNanos));
+        out.printf("  resolve:              %10.3f ms%n", millis(resolveNanos));
+        out.printf("  interpret:            %10.3f ms%n", millis(interpretNanos));
+        out.printf("  tokens:               %10d%n", tokens);
+        out.printf("  statements:           %10d%n", statements);
+        out.printf("  expressions:          %10d%n", expressions);
+        out.printf("  statements executed:  %10d%n", total.statementsExecuted);
+        out.printf("  calls:                %10d%n", total.calls);
+        out.printf("  environments created: %10d%n", total.environments);
+        out.printf("  instances allocated:  %10d%n", total.instances);
+        out.printf("  peak call depth:      %10d%n", total.peakCallDepth);
+    }
+
+    void printJson(PrintStream out) {
+        Counters total = total();
+        out.println("{");
+        out.printf("  \"scanMillis\": %.3f,%n", millis(scanNanos));
+        out.printf("  \"parseMillis\": %.3f,%n", millis(parseNanos));
+        out.printf("  \"resolveMillis\": %.3f,%n", millis(resolveNanos));
+        out.printf("  \"interpretMillis\": %.3f,%n", millis(interpretNanos));
+        out.printf("  \"tokens\": %d,%n", tokens);
+        out.printf("  \"statements\": %d,%n", statements);
+        out.printf("  \"expressions\": %d,%n", expressions);
+        out.printf("  \"statementsExecuted\": %d,%n", total.statementsExecuted);
+        out.printf("  \"calls\": %d,%n", total.calls);
+        out.printf("  \"environmentsCreated\": %d,%n", total.environments);
+        out.printf("  \"instancesAllocated\": %d,%n", total.instances);
+        out.printf("  \"peakCallDepth\": %d%n", total.peakCallDepth);
+        out.println("}");
+    }
+
+    private synchronized Counters total() {
+        Counters total = new Counters(false);
+        for (Counters each : counters) {
+            total.statementsExecuted += each.statementsExecuted;
+            total.calls += each.calls;
+            total.environments += each.environments;
+            total.instances += each.instances;
+            // Tasks start at the depth they were spawned from, so this is the deepest of all.
+            total.peakCallDepth = Math.max(total.peakCallDepth, each.peakCallDepth);
+        }
+        return total;
+    }
+
+    private void count(Stmt stmt) {
+        if (stmt == null) return;
+        statements++;
+
+        switch (stmt.kind) {
+            case BLOCK: countAll(((Stmt.Block) stmt).statements); break;
+            case CLASS: {
+                Stmt.Class klass = (Stmt.Class) stmt;
+                count(klass.superclass);
+                countAll(klass.methods);
+                break;
+            }
+            case EXPRESSION: count(((Stmt.Expression) stmt).expression); break;
+            case FOR: {
+                Stmt.For loop = (Stmt.For) stmt;
+                count(loop.counter);
+                count(loop.condition);
+                count(loop.increment);
+                count(loop.body);
+                break;
+            }
+            case FUNCTION: countAll(((Stmt.Function) stmt).body); break;
+            case IF: {
+                Stmt.If branch = (Stmt.If) stmt;
+                count(branch.condition);
+                count(branch.thenBranch);
+                count(branch.elseBranch);
+                break;
+            }
+            case PRINT: count(((Stmt.Print) stmt).expression); break;
+            case RETURN: count(((Stmt.Return) stmt).value); break;
+            case VAR: count(((Stmt.Var) stmt).initializer); break;
+            case WHILE: {
+                Stmt.While loop = (Stmt.While) stmt;
+                count(loop.condition);
+                count(loop.body);
+                break;
+            }
+        }
+    }
+
+    private void countAll(List<? extends Stmt> statements) {
+        for (Stmt statement : statements) {
+            count(statement);
+        }
+    }
+
+    private void count(Expr expr) {
+        if (expr == null) return;
+        expressions++;
+
+        switch (expr.kind) {
+            case ASSIGN: count(((Expr.Assign) expr).value); break;
+            case BINARY: {
+                Expr.Binary binary = (Expr.Binary) expr;
+                count(binary.left);
+                count(binary.right);
+                break;
+            }
+            case CALL: {
+                Expr.Call call = (Expr.Call) expr;
+                count(call.callee);
+                for (Expr argument : call.arguments) count(argument);
+                break;
+            }
+            case GET: count(((Expr.Get) expr).object); break;
+            case GROUPING: count(((Expr.Grouping) expr).expression); break;
+            case LOGICAL: {
+                Expr.Logical logical = (Expr.Logical) expr;
+                count(logical.left);
+                count(logical.right);
+                break;
+            }
+            case SET: {
+                Expr.Set set = (Expr.Set) expr;
+                count(set.object);
+                count(set.value);
+                break;
+            }
+            case UNARY: count(((Expr.Unary) expr).right); break;
+            default:
+                // Literals, variables, this, and super have nothing inside them.
+                break;
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
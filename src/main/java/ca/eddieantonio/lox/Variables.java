@@ -0,0 +1,224 @@
+package ca.eddieantonio.lox;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The variables of one Environment, kept in the order they were defined.
+ *
+ * A scope's variables are always defined in the same order, so the closure
+ * engine can work out ahead of time which slot a local variable lives in,
+ * and read it without looking its name up. Slots are only ever hints: the
+ * name is checked, and looked up normally if it's not in that slot. For
+ * everything else, this is just a Map.
+ */
+class Variables extends AbstractMap<String, Object> {
+    // Past this many variables (e.g., the globals), names are found with a HashMap.
+    private static final int INDEX_THRESHOLD = 8;
+
+    static final int DEFAULT_CAPACITY = 4;
+
+    private String[] names;
+    private Object[] values;
+    private int size = 0;
+    private Map<String, Integer> index = null;
+
+    Variables() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    Variables(int capacity) {
+        names = new String[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * @return the slot that holds the variable, or -1 if there's no such variable.
+     */
+    int slotOf(Object name) {
+        if (index != null) {
+            Integer slot = index.get(name);
+            return slot == null ? -1 : slot;
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i] == name) return i;
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the slot holding the variable, trying the hint first; or -1.
+     */
+    int slotOf(int hint, String name) {
+        // Names are usually interned, so this is usually enough:
+        if (hint >= 0 && hint < size && names[hint] == name) return hint;
+        return slotOf(name);
+    }
+
+    Object valueAt(int slot) {
+        return values[slot];
+    }
+
+    void setValueAt(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    Object get(int hint, String name) {
+        int slot = slotOf(hint, name);
+        return slot < 0 ? null : values[slot];
+    }
+
+    void put(int hint, String name, Object value) {
+        int slot = slotOf(hint, name);
+        if (slot < 0) {
+            append(name, value);
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * Defines a variable that is expected to be new, in the next slot.
+     */
+    void define(int hint, String name, Object value) {
+        if (hint == size && index == null) {
+            append(name, value);
+        } else {
+            put(name, value);
+        }
+    }
+
+    @Override
+    public Object get(Object name) {
+        int slot = slotOf(name);
+        return slot < 0 ? null : values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return slotOf(name) >= 0;
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        int slot = slotOf(name);
+        if (slot >= 0) {
+            Object previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+
+        append(name, value);
+        return null;
+    }
+
+    @Override
+    public Object remove(Object name) {
+        int slot = slotOf(name);
+        if (slot < 0) return null;
+
+        Object previous = values[slot];
+        removeAt(slot);
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        index = null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next = 0;
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= size) throw new NoSuchElementException();
+                        last = next++;
+                        int slot = last;
+                        return new SimpleEntry<>(names[slot], values[slot]) {
+                            @Override
+                            public Object setValue(Object value) {
+                                values[slot] = value;
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) throw new IllegalStateException();
+                        removeAt(last);
+                        next = last;
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private void append(String name, Object value) {
+        if (size == names.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, size * 2);
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        names[size] = name;
+        values[size] = value;
+        if (index != null) {
+            index.put(name, size);
+        } else if (size + 1 > INDEX_THRESHOLD) {
+            reindex(size + 1);
+        }
+        size++;
+    }
+
+    private void removeAt(int slot) {
+        int moved = size - slot - 1;
+        System.arraycopy(names, slot + 1, names, slot, moved);
+        System.arraycopy(values, slot + 1, values, slot, moved);
+        size--;
+        names[size] = null;
+        values[size] = null;
+        if (index != null) reindex(size);
+    }
+
+    private void reindex(int count) {
+        index = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            index.put(names[i], i);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.SimpleBindings;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Checks jlox's javax.script engine. tool/run-tests runs this with the
+ * classes and resources on the class path; it prints what went wrong, and
+ * exits with status 1 if anything did.
+ */
+public class ScriptEngineCheck {
+    public interface Adder {
+        double add(double a, double b);
+    }
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+        if (engine == null) {
+            System.out.println("FAIL: no script engine named lox");
+            System.exit(1);
+        }
+        StringWriter output = new StringWriter();
+        engine.getContext().setWriter(output);
+
+        // eval, put, and get.
+        engine.put("x", 41);
+        engine.eval("var y = x + 1; fun add(a, b) { return a + b; } var s = \"hi\";");
+        expect("get y", 42.0, engine.get("y"));
+        expect("get s", "hi", engine.get("s"));
+
+        // invokeFunction and getInterface.
+        expect("invokeFunction add", 5.0, ((Invocable) engine).invokeFunction("add", 2, 3));
+        Adder adder = ((Invocable) engine).getInterface(Adder.class);
+        expect("getInterface add", 7.0, adder == null ? null : adder.add(3, 4));
+
+        // Other bindings see theirs, get back only what the script defined,
+        // and leave the engine's globals alone.
+        Bindings mine = new SimpleBindings(new HashMap<>(Map.of("x", 6)));
+        engine.eval("print x; var z = 3; x = x + 1;", mine);
+        engine.eval("print x;");
+        expect("output", "6\n41\n", output.toString());
+        expect("bindings after eval", Map.of("x", 7.0, "z", 3.0), mine);
+        expect("engine z", null, engine.get("z"));
+        expect("engine y", 42.0, engine.get("y"));
+
+        Bindings created = engine.createBindings();
+        created.put("x", 1);
+        engine.eval("var w = x + y;", created);
+        expect("created w", 43.0, created.get("w"));
+        expect("created y", null, created.get("y"));
+        expect("engine w", null, engine.get("w"));
+        expect("engine x", 41.0, engine.get("x"));
+
+        if (failures > 0) System.exit(1);
+    }
+
+    private static void expect(String what, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            failures++;
+            System.out.println("FAIL: " + what + ": expected " + expected + ", got " + actual);
+        }
+    }
+}
@@ -14,6 +14,7 @@ end
 
 ASTGenerator.define do |generator|
   generator.base_name = "Expr"
+  generator.depths = true
   generator.types ={
     "Assign"   => ["Token name", "Expr value"],
     "Binary"   => ["Expr left", "Token operator", "Expr right"],
@@ -32,17 +33,20 @@ end
 
 ASTGenerator.define do |generator|
   generator.base_name = "Stmt"
+  generator.line_numbers = true
   generator.types ={
     "Block"      => ["List<Stmt> statements"],
     "Class"      => ["Token name", "Expr.Variable superclass",
                      "List<Stmt.Function> methods"],
     "Expression" => ["Expr expression"],
+    "For"        => ["Stmt.Var counter", "Expr.Binary condition",
+                     "Expr.Assign increment", "Stmt body", "boolean invariant"],
     "Function"   => ["Token name", "List<Token> params", "List<Stmt> body"],
     "If"         => ["Expr condition",
                      "Stmt thenBranch", "Stmt elseBranch"],
     "Print"      => ["Expr expression"],
     "Return"     => ["Token keyword", "Expr value"],
-    "Var"        => ["Token name", "Expr initializer"],
+    "Var"        => ["Token name", "Expr initializer", "boolean constant"],
     "While"      => ["Expr condition", "Stmt body"],
   }
 end
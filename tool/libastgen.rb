@@ -1,5 +1,5 @@
 class ASTGenerator
-  attr_accessor :types, :base_name
+  attr_accessor :types, :base_name, :line_numbers, :depths
   attr_reader :indent_level
 
   def initialize
@@ -16,13 +16,32 @@ class ASTGenerator
       write_empty_line
 
       write_line "// AUTOGENERATED FILE: DO NOT MODIFY!"
-      write_line "abstract class #{base_name} {"
+      write_line "abstract sealed class #{base_name} {"
       indent
 
+      generate_kind
       generate_visitor
       generate_types
       write_empty_line
 
+      # Every node knows its kind, so that it can be dispatched with a switch:
+      write_line "final Kind kind;"
+      if line_numbers
+        write_line "// The line it starts on, as set by the Parser; 0 if unknown."
+        write_line "int line = 0;"
+      end
+      if depths
+        write_line "// How many environments up the variable it names lives, as set by the Resolver; -1 for globals."
+        write_line "int depth = -1;"
+      end
+      write_empty_line
+      write_line "private #{base_name}(Kind kind) {"
+      indent
+      write_line "this.kind = kind;"
+      unindent
+      write_line "}"
+      write_empty_line
+
       # The base accept() method:
       write_line "abstract <T> T accept(Visitor<T> visitor);"
 
@@ -35,7 +54,7 @@ class ASTGenerator
     types.each_pair do  |class_name, fields|
       write_empty_line
 
-      write_line "static class #{class_name} extends #{base_name} {"
+      write_line "static final class #{class_name} extends #{base_name} {"
       indent
 
       # Fields
@@ -47,6 +66,7 @@ class ASTGenerator
       # Constructor
       write_line "#{class_name}(#{fields.join(', ')}) {"
       indent
+      write_line "super(Kind.#{kind_name(class_name)});"
       fields.each do |field|
         _type, name = field.split()
         write_line "this.#{name} = #{name};"
@@ -69,6 +89,20 @@ class ASTGenerator
     end
   end
 
+  # Lets code switch on a node's kind instead of visiting it.
+  def generate_kind
+    write_line "enum Kind {"
+    indent
+
+    types.each_key do |type_name|
+      write_line "#{kind_name(type_name)},"
+    end
+
+    unindent
+    write_line "}"
+    write_empty_line
+  end
+
   def generate_visitor
     write_line "interface Visitor<T> {"
     indent
@@ -87,6 +121,10 @@ class ASTGenerator
     "#{base_name}Visitor"
   end
 
+  def kind_name(class_name)
+    class_name.upcase
+  end
+
   def output_file
     "#{ARGV[0]}/#{base_name}.java"
   end